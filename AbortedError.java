@@ -0,0 +1,15 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+/**
+* Thrown by operations on constructive reals when the computation
+* has been stopped, because the thread was interrupted,
+* <TT>CR.please_stop</tt> was set, or the limits of an
+* <TT>EvaluationContext</tt> were exceeded.
+*/
+public class AbortedError extends Error {
+    public AbortedError() {}
+}
@@ -45,6 +45,13 @@
 package com.sgi.math;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
 * Constructive real numbers, also known as recursive, or computable reals.
@@ -93,11 +100,20 @@ import java.math.BigInteger;
 * Any operation may throw <TT>com.sgi.math.AbortedError</tt> if the thread in
 * which it is executing is interrupted.  (<TT>InterruptedException</tt> cannot
 * be used for this purpose, since CR inherits from <TT>Number</tt>.)
+* An individual evaluation may also be cancelled, or limited in time or
+* precision, by performing it with an <TT>EvaluationContext</tt>.
 * <P>
 * Any operation may also throw <TT>com.sgi.math.PrecisionOverflowError</tt>
 * If the precision request generated during any subcalculation overflows
 * a 28-bit integer.  (This should be extremely unlikely, except as an
 * outcome of a division by zero, or other erroneous computation.)
+* <P>
+* Constructive reals, including the shared constants, may be used
+* concurrently from several threads.  Cached approximations are
+* published atomically, so that a thread never observes an approximation
+* together with the wrong precision.  By default, two threads requesting
+* the same approximation may both compute it;
+* see <TT>share_evaluations</tt>.
 * 
 */
 public abstract class CR extends Number {
@@ -123,9 +139,48 @@ public abstract class CR extends Number {
 * throwing AbortedError.  Must be rest to false before any further
 * computation.  Ideally Thread.interrupt() should be used instead, but
 * that doesn't appear to be consistently supported by browser VMs.
+* To stop only some computations, use an <TT>EvaluationContext</tt>.
 */
 public volatile static boolean please_stop = false;
 
+/**
+* Setting this to true causes a thread that needs a more precise
+* approximation of a constructive real than is cached to wait for any other
+* thread that is already computing one, and then to reuse its result
+* if it is precise enough.
+* This avoids duplicated work when several threads evaluate
+* the same expression, e.g. <TT>CR.PI</tt> to very high precision.
+* Threads that are waiting in this way do not respond to
+* <TT>please_stop</tt> or interrupts until the thread they are waiting
+* for finishes.
+* Evaluations performed in <TT>ForkJoinPool</tt> worker threads never wait,
+* since that could leave a pool without runnable workers.
+*/
+public volatile static boolean share_evaluations = false;
+
+/**
+* If this is not null, the two operands of a sum or product are
+* evaluated concurrently in this pool, provided both are needed to at least
+* <TT>parallel_threshold</tt> bits, and neither is already known to that
+* precision.
+* The precisions requested from the operands are the same as in sequential
+* evaluation, and so are the results, unless the operands share a
+* subexpression whose cached approximation then depends on timing.
+* In that case, results are still accurate to the requested precision.
+*/
+public volatile static ForkJoinPool parallel_pool = null;
+
+/**
+* The precision, in bits, below which <TT>parallel_pool</tt> is not used.
+*/
+public volatile static int parallel_threshold = 5000;
+
+/**
+* The precision, in bits, at and above which <TT>ln</tt> uses the
+* arithmetic-geometric mean instead of a Taylor series.
+*/
+public volatile static int agm_ln_threshold = 2000;
+
 /**
 * Must be defined in subclasses of <TT>CR</tt>.
 * Most users can ignore the existence of this method, and will
@@ -138,13 +193,343 @@ public volatile static boolean please_stop = false;
 * at least a factor of 8 away from overflow.
 */
       protected abstract BigInteger approximate(int precision);
-      transient int min_prec;
-	// The smallest precision value with which the above
-	// has been called.
-      transient BigInteger max_appr;
-	// The scaled approximation corresponding to min_prec.
-      transient boolean appr_valid = false;
-	// min_prec and max_val are valid.
+
+    // The most precise approximation computed so far.  Immutable, so
+    // that a reader always sees a consistent precision and approximation.
+      static final class appr_cache {
+	final int min_prec;
+	    // The smallest precision value with which approximate
+	    // has been called.
+	final BigInteger max_appr;
+	    // The scaled approximation corresponding to min_prec.
+	appr_cache(int p, BigInteger appr) {
+	    min_prec = p;
+	    max_appr = appr;
+	}
+      }
+      transient volatile appr_cache cache;
+	// Null if there is no approximation yet.  Replaced only by
+	// a more precise approximation, via cache_updater.
+      private static final AtomicReferenceFieldUpdater<CR, appr_cache>
+	cache_updater = AtomicReferenceFieldUpdater.newUpdater(
+				CR.class, appr_cache.class, "cache");
+
+    // Record appr as the approximation for precision p, unless
+    // another thread has already recorded one that is at least as precise.
+      void update_cache(int p, BigInteger appr) {
+	appr_cache new_cache = new appr_cache(p, appr);
+	for (;;) {
+	    appr_cache old_cache = cache;
+	    if (old_cache != null && old_cache.min_prec <= p) return;
+	    if (cache_updater.compareAndSet(this, old_cache, new_cache)) return;
+	}
+      }
+
+    // The cached approximation, if it is at least as precise as p,
+    // scaled to precision p.  Otherwise null.
+      BigInteger cached_appr(int p) {
+	appr_cache c = cache;
+	if (c != null && p >= c.min_prec) {
+	    return scale(c.max_appr, c.min_prec - p);
+	}
+	return null;
+      }
+
+    // Is it worth evaluating x.get_appr(px) and y.get_appr(py) in
+    // parallel?
+      static boolean should_fork(CR x, int px, CR y, int py) {
+	int threshold = -parallel_threshold;
+	return parallel_pool != null && px <= threshold && py <= threshold
+	       && x.cached_appr(px) == null && y.cached_appr(py) == null;
+      }
+
+    // A task evaluating op.get_appr(prec), in the evaluation context
+    // of the thread that created it.
+      static final class appr_task extends RecursiveTask<BigInteger> {
+	final CR op;
+	final int prec;
+	final EvaluationContext context;
+	appr_task(CR x, int p) {
+	    op = x;
+	    prec = p;
+	    context = EvaluationContext.current.get();
+	}
+	protected BigInteger compute() {
+	    return get_appr_in_context(op, prec, context);
+	}
+      }
+
+    // { x.get_appr(px), y.get_appr(py) }, with y evaluated in
+    // parallel_pool and x in the current thread.
+      static BigInteger[] get_apprs_in_parallel(CR x, int px, CR y, int py) {
+	ForkJoinPool pool = parallel_pool;
+	if (pool == null) {
+	    return new BigInteger[] { x.get_appr(px), y.get_appr(py) };
+	}
+	appr_task y_task = new appr_task(y, py);
+	if (ForkJoinTask.getPool() == pool) {
+	    y_task.fork();
+	} else {
+	    pool.execute(y_task);
+	}
+	BigInteger x_appr;
+	try {
+	    x_appr = x.get_appr(px);
+	} catch (RuntimeException | Error e) {
+	    y_task.cancel(false);
+	    throw e;
+	}
+	return new BigInteger[] { x_appr, y_task.join() };
+      }
+
+    // Throw AbortedError if the computation in this thread should stop.
+    // Called periodically from long running loops.
+      static void check_abort() {
+	if (Thread.interrupted() || please_stop) throw new AbortedError();
+	EvaluationContext context = EvaluationContext.current.get();
+	if (context != null) context.check();
+      }
+
+    // As check_abort(), but also throw if the current evaluation
+    // context does not allow values of the given number of bits.
+    // Called from loops whose working values, e.g. series sums,
+    // Newton iterates and binary splitting products, are about
+    // that large, so that an evaluation is stopped before it builds
+    // them, rather than when its final result is checked.
+      static void check_abort(int bits) {
+	if (Thread.interrupted() || please_stop) throw new AbortedError();
+	EvaluationContext context = EvaluationContext.current.get();
+	if (context != null) {
+	    context.check();
+	    context.check_bits(bits);
+	}
+      }
+
+    // approximate(precision), subject to the limits of the current
+    // evaluation context, if any.
+    // If approximate calls are already deeply nested in this thread,
+    // the operands are first evaluated by prefetch_operands, so that
+    // approximate finds them cached, instead of recursing further.
+      BigInteger limited_approximate(int precision) {
+	int depth[] = recursion_depth.get();
+	if (depth[0] >= max_recursion_depth) prefetch_operands(precision);
+	EvaluationContext context = EvaluationContext.current.get();
+	++depth[0];
+	try {
+	    if (context == null) return approximate(precision);
+	    context.check();
+	    context.check_precision(precision);
+	    BigInteger result = approximate(precision);
+	    context.check_bits(result.bitLength());
+	    return result;
+	} finally {
+	    --depth[0];
+	}
+      }
+
+    // The number of nested approximate calls after which we switch to
+    // evaluation with an explicit stack.
+      static final int max_recursion_depth = 100;
+      static final ThreadLocal<int[]> recursion_depth =
+	ThreadLocal.withInitial(() -> new int[1]);
+
+    // An operand approximation needed by approximate().
+      static final class operand_request {
+	CR op;
+	int prec;
+	operand_request() {}
+	operand_request(CR x, int p) {
+	    op = x;
+	    prec = p;
+	}
+      }
+
+    // If approximate(p) would next need an operand approximation that
+    // is not cached, describe it in r and return true.  Otherwise
+    // return false.  Used by prefetch_operands.  The default version,
+    // for nodes without operands, or that do not support prefetching,
+    // returns false; approximate then evaluates any operands recursively.
+    // Implementations must request operands with exactly the precisions
+    // approximate would use, and in the same order, so that prefetching
+    // does not change the result.
+      boolean next_operand(int p, operand_request r) {
+	return false;
+      }
+
+    // Helpers for next_operand.  Each returns true and fills in r if
+    // the corresponding call on this constructive real would need an
+    // uncached approximation.
+      boolean appr_request(int p, operand_request r) {
+	if (cached_appr(p) != null) return false;
+	r.op = this;
+	r.prec = p;
+	return true;
+      }
+
+      boolean msd_request(int n, operand_request r) {
+	appr_cache c = cache;
+	if (c != null && (c.max_appr.compareTo(big1) > 0
+			  || c.max_appr.compareTo(bigm1) < 0)) {
+	    return false;
+	}
+	return appr_request(n - 1, r);
+      }
+
+      boolean iter_msd_request(int n, operand_request r) {
+	for (int prec = 0; prec > n + 30; prec = (prec * 3)/2 - 16) {
+	    if (msd_request(prec, r)) return true;
+	    if (msd(prec) != Integer.MIN_VALUE) return false;
+	    check_prec(prec);
+	}
+	return msd_request(n, r);
+      }
+
+      boolean signum_request(operand_request r) {
+	for (int a = -20; ; a *= 2) {
+	    check_prec(a);
+	    appr_cache c = cache;
+	    if (c != null && c.max_appr.signum() != 0) return false;
+	    if (appr_request(a - 1, r)) return true;
+	    if (cached_appr(a - 1).signum() != 0) return false;
+	}
+      }
+
+    // Evaluate the operands needed by approximate(precision), and
+    // recursively their operands, using an explicit stack rather than
+    // recursion.  Each node is evaluated only once all the operands it
+    // needs are cached, so its approximate() call does not recurse.
+      void prefetch_operands(int precision) {
+	int depth[] = recursion_depth.get();
+	int saved_depth = depth[0];
+	java.util.ArrayList<operand_request> pending =
+	    new java.util.ArrayList<operand_request>();
+	operand_request r = new operand_request();
+	CR node = this;
+	int prec = precision;
+	for (;;) {
+	    check_abort();
+	    if (node.next_operand(prec, r)) {
+		pending.add(new operand_request(node, prec));
+		node = r.op;
+		prec = r.prec;
+		continue;
+	    }
+	    if (pending.isEmpty()) return;	// node == this
+	    depth[0] = 0;
+	    try {
+		node.get_appr(prec);
+	    } finally {
+		depth[0] = saved_depth;
+	    }
+	    operand_request parent = pending.remove(pending.size() - 1);
+	    node = parent.op;
+	    prec = parent.prec;
+	}
+      }
+
+    // The derivative of this with respect to var, which is
+    // normally one of its transitive operands, or null if this does not
+    // depend on var.  Memo records the derivatives of the nodes visited
+    // so far, so that shared subexpressions are differentiated only
+    // once.  Used by UnaryCRFunction.derivative().
+    // Throws UnsupportedOperationException if differentiable(this, var)
+    // is false.
+      final CR derivative(CR var, IdentityHashMap<CR, CR> memo) {
+	// Differentiate the nodes in postorder, with an explicit stack,
+	// as in enclose, so that each differentiate call finds the
+	// derivatives of its operands in memo, and does not recurse.
+	ArrayDeque<CR> stack = new ArrayDeque<CR>();
+	stack.push(this);
+	while (!stack.isEmpty()) {
+	    check_abort();
+	    CR x = stack.peek();
+	    if (x == var || memo.containsKey(x)) {
+		stack.pop();
+		continue;
+	    }
+	    if (!x.differentiable()) {
+		throw new UnsupportedOperationException(
+			"cannot differentiate " + x.getClass().getName());
+	    }
+	    CR operands[] = x.derivative_operands();
+	    boolean ready = true;
+	    for (int i = 0; i < operands.length; ++i) {
+		if (operands[i] != var && !memo.containsKey(operands[i])) {
+		    stack.push(operands[i]);
+		    ready = false;
+		}
+	    }
+	    if (!ready) continue;
+	    memo.put(x, x.differentiate(var, memo));
+	    stack.pop();
+	}
+	return this == var? one : memo.get(this);
+      }
+
+    // Whether x.derivative(var, ...) succeeds, i.e. whether every node
+    // it would differentiate is differentiable().
+      static boolean differentiable(CR x, CR var) {
+	IdentityHashMap<CR, Boolean> seen = new IdentityHashMap<CR, Boolean>();
+	ArrayDeque<CR> stack = new ArrayDeque<CR>();
+	stack.push(x);
+	while (!stack.isEmpty()) {
+	    CR y = stack.pop();
+	    if (y == var || seen.put(y, Boolean.TRUE) != null) continue;
+	    if (!y.differentiable()) return false;
+	    for (CR op : y.derivative_operands()) stack.push(op);
+	}
+	return true;
+      }
+
+    // The operands whose derivatives differentiate() uses, or null
+    // if we do not know how to differentiate this node.  The default
+    // version, used by all subclasses outside this package, returns null.
+      CR[] derivative_operands() {
+	return null;
+      }
+
+    // Whether differentiate() applies to this node, given the
+    // derivatives of its derivative_operands().
+      boolean differentiable() {
+	return derivative_operands() != null;
+      }
+
+    // The derivative as above, given the derivatives of
+    // derivative_operands(), which must already be in memo, unless
+    // they are var.  Implementations obtain them by calling derivative
+    // on their operands.  Called only if differentiable().
+      CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	throw new UnsupportedOperationException(
+			"cannot differentiate " + getClass().getName());
+      }
+
+    // x + y, where either may be null, representing 0.
+      static CR add_derivatives(CR x, CR y) {
+	if (x == null) return y;
+	if (y == null) return x;
+	return x.add(y);
+      }
+
+    // x.get_appr(precision), evaluated with the given context,
+    // which may be null.
+      static BigInteger get_appr_in_context(CR x, int precision,
+					    EvaluationContext context) {
+	EvaluationContext previous = EvaluationContext.current.get();
+	if (context == previous) return x.get_appr(precision);
+	EvaluationContext.current.set(context);
+	try {
+	    return x.get_appr(precision);
+	} finally {
+	    EvaluationContext.current.set(previous);
+	}
+      }
+
+    // Should this thread wait for concurrent evaluations of the same
+    // constructive real?
+      static boolean should_share() {
+	return share_evaluations
+	       && !(Thread.currentThread() instanceof ForkJoinWorkerThread);
+      }
 
     // Helper functions
       static int bound_log2(int n) {
@@ -173,6 +558,7 @@ public volatile static boolean please_stop = false;
 * <TT>BigInteger</tt>.
 */
       public static CR valueOf(BigInteger n) {
+	if (n.bitLength() < 64) return new dyadic_CR(n.longValue(), 0);
 	return new int_CR(n);
       }
 
@@ -181,7 +567,7 @@ public volatile static boolean please_stop = false;
 * Java <TT>int</tt>.
 */ 
       public static CR valueOf(int n) {
-	return valueOf(BigInteger.valueOf(n));
+	return new dyadic_CR(n, 0);
       }
 
 /**
@@ -189,7 +575,7 @@ public volatile static boolean please_stop = false;
 * Java <TT>long</tt>.
 */ 
       public static CR valueOf(long n) {
-	return valueOf(BigInteger.valueOf(n));
+	return new dyadic_CR(n, 0);
       }
 
 /**
@@ -210,9 +596,7 @@ public volatile static boolean please_stop = false;
 	} else {
 	    mantissa <<= 1;
 	}
-	CR result = valueOf(mantissa).shiftLeft(exp);
-	if (negative) result = result.negate();
-	return result;
+	return dyadic_CR.normalized(negative? -mantissa : mantissa, exp);
       }
 
 /**
@@ -255,48 +639,189 @@ public volatile static boolean please_stop = false;
 */ 
       public BigInteger get_appr(int precision) {
 	check_prec(precision);
-	if (appr_valid && precision >= min_prec) {
-	    return scale(max_appr, min_prec - precision);
-	} else {
-	    BigInteger result = approximate(precision);
-	    min_prec = precision;
-	    max_appr = result;
-	    appr_valid = true;
-	    return result;   
+	BigInteger result = cached_appr(precision);
+	if (result != null) return result;
+	if (should_share()) {
+	    synchronized(this) {
+		// Another thread may have computed it while we waited.
+		result = cached_appr(precision);
+		if (result != null) return result;
+		result = limited_approximate(precision);
+		update_cache(precision, result);
+		return result;
+	    }
+	}
+	result = limited_approximate(precision);
+	update_cache(precision, result);
+	return result;   
+      }
+
+/**
+* Returns value / 2 ** prec rounded to an integer, like
+* <TT>get_appr(precision)</tt>, but subject to the limits of
+* <TT>context</tt>.
+* Throws <TT>com.sgi.math.EvaluationAbortedError</tt> if any of them
+* is exceeded.
+* Approximations that were computed before the evaluation was aborted
+* remain cached, so a later evaluation need not repeat that work.
+*/ 
+      public BigInteger get_appr(int precision, EvaluationContext context) {
+	return get_appr_in_context(this, precision, context);
+      }
+
+/**
+* Returns integers <TT>{ lo, hi }</tt>, such that
+* lo * 2 ** precision <= value <= hi * 2 ** precision.
+* The bounds are computed by interval arithmetic, with all
+* intermediate results rounded outward to the same precision.
+* Unlike <TT>get_appr</tt>, this needs no guard bits, and no
+* estimates of the magnitudes of operands, but the
+* interval may be wider than 2 units.  Each arithmetic operation
+* normally adds a few units, and products and quotients also
+* magnify the width of their operands' intervals.  Cached
+* approximations are used where available.  Nodes other than
+* sums, products, quotients, shifts, negations, square roots and
+* selections, such as those for transcendental functions, are
+* evaluated with <TT>get_appr(precision)</tt>.
+* Results are not cached.
+*/
+      public BigInteger[] enclose(int precision) {
+	check_prec(precision);
+	// Evaluate the nodes in postorder, with an explicit stack,
+	// so that deep expressions do not overflow the Java stack.
+	IdentityHashMap<CR, BigInteger[]> done =
+	    new IdentityHashMap<CR, BigInteger[]>();
+	ArrayDeque<CR> stack = new ArrayDeque<CR>();
+	stack.push(this);
+	while (!stack.isEmpty()) {
+	    check_abort();
+	    CR x = stack.peek();
+	    if (done.containsKey(x)) {
+		stack.pop();
+		continue;
+	    }
+	    BigInteger appr = x.cached_appr(precision);
+	    if (appr != null) {
+		done.put(x, new BigInteger[] { appr.subtract(big1),
+					       appr.add(big1) });
+		stack.pop();
+		continue;
+	    }
+	    CR operands[] = x.enclosure_operands();
+	    BigInteger operand_enclosures[][] = null;
+	    if (operands != null) {
+		boolean ready = true;
+		operand_enclosures = new BigInteger[operands.length][];
+		for (int i = 0; i < operands.length; ++i) {
+		    operand_enclosures[i] = done.get(operands[i]);
+		    if (operand_enclosures[i] == null) {
+			stack.push(operands[i]);
+			ready = false;
+		    }
+		}
+		if (!ready) continue;
+	    }
+	    done.put(x, x.enclosure(precision, operand_enclosures));
+	    stack.pop();
+	}
+	return done.get(this);
+      }
+
+/**
+* Returns <TT>{ lo, hi }</tt>, such that lo <= value <= hi,
+* computed from <TT>enclose(precision)</tt>, and rounded outward.
+*/
+      public double[] encloseDouble(int precision) {
+	BigInteger bounds[] = enclose(precision);
+	return new double[] {
+	    Math.nextDown(scaled_double(bounds[0], precision, false)),
+	    Math.nextUp(scaled_double(bounds[1], precision, true)) };
+      }
+
+    // x * 2**p, rounded to a double, with an error of at most one
+    // unit in the last place, rounding downward or upward before the
+    // conversion.
+      static double scaled_double(BigInteger x, int p, boolean up) {
+	int excess = x.abs().bitLength() - 53;
+	if (excess > 0) {
+	    x = up? ceil_shift(x, -excess) : shift(x, -excess);
+	    p += excess;
 	}
+	// Scalb rounds the result only if it is denormal.
+	return Math.scalb(x.doubleValue(), p);
+      }
+
+    // x * 2**n, rounded up.
+      static BigInteger ceil_shift(BigInteger x, int n) {
+	return shift(x.negate(), n).negate();
+      }
+
+    // The operands whose enclosures are needed by enclosure(), or null
+    // if the enclosure of this node is computed from get_appr instead.
+      CR[] enclosure_operands() {
+	return null;
+      }
+
+    // Integers { lo, hi }, such that lo * 2**p <= value <= hi * 2**p,
+    // given operand_enclosures[i], the corresponding bounds for
+    // enclosure_operands()[i], or null if enclosure_operands() is.
+    // The default version evaluates this node to precision p.
+      BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger appr = get_appr(p);
+	return new BigInteger[] { appr.subtract(big1), appr.add(big1) };
+      }
+
+    // Bounds on the product of values enclosed by x and y, as
+    // described for enclosure(), where x and y are also bounds
+    // for precision p.
+      static BigInteger[] multiply_enclosures(int p, BigInteger x[],
+					      BigInteger y[]) {
+	BigInteger p1 = x[0].multiply(y[0]);
+	BigInteger p2 = x[0].multiply(y[1]);
+	BigInteger p3 = x[1].multiply(y[0]);
+	BigInteger p4 = x[1].multiply(y[1]);
+	BigInteger lo = p1.min(p2).min(p3.min(p4));
+	BigInteger hi = p1.max(p2).max(p3.max(p4));
+	return new BigInteger[] { shift(lo, p), ceil_shift(hi, p) };
       }
 
     // Return the position of the msd.
     // If x.msd() == n then
     // 2**(n-1) < abs(x) < 2**(n+1) 
-    // This initial version assumes that max_appr is valid
-    // and sufficiently removed from zero
+    // This initial version assumes that the cached approximation
+    // is valid and sufficiently removed from zero
     // that the msd is determined.
       int known_msd() {
+	return known_msd(cache);
+      }
+
+      static int known_msd(appr_cache c) {
 	int first_digit;
         int length;
-        if (max_appr.signum() >= 0) {
-            length = max_appr.bitLength();
+        if (c.max_appr.signum() >= 0) {
+            length = c.max_appr.bitLength();
         } else {
-            length = max_appr.negate().bitLength();
+            length = c.max_appr.negate().bitLength();
         }
-        first_digit = min_prec + length - 1;
+        first_digit = c.min_prec + length - 1;
         return first_digit;
       }
 	
     // This version may return Integer.MIN_VALUE if the correct
     // answer is < n.
       int msd(int n) {
-	if (!appr_valid ||
-		max_appr.compareTo(big1) <= 0
-		&& max_appr.compareTo(bigm1) >= 0) {
+	appr_cache c = cache;
+	if (c == null ||
+		c.max_appr.compareTo(big1) <= 0
+		&& c.max_appr.compareTo(bigm1) >= 0) {
 	    get_appr(n - 1);
-	    if (max_appr.abs().compareTo(big1) <= 0) {
+	    c = cache;
+	    if (c.max_appr.abs().compareTo(big1) <= 0) {
 		// msd could still be arbitrarily far to the right.
 		return Integer.MIN_VALUE;
 	    }
 	}
-	return known_msd();
+	return known_msd(c);
       }
 
 
@@ -310,7 +835,7 @@ public volatile static boolean please_stop = false;
 	    int msd = msd(prec);
 	    if (msd != Integer.MIN_VALUE) return msd;
 	    check_prec(prec);
-	    if (Thread.interrupted() || please_stop) throw new AbortedError();
+	    check_abort();
 	}
         return msd(n);
       }
@@ -332,27 +857,23 @@ public volatile static boolean please_stop = false;
         return new String(a);
       }    
 
-    // Natural log of 2.  Needed for some prescaling below.
-    // ln(2) = 7ln(10/9) - 2ln(25/24) + 3ln(81/80)
 	CR simple_ln() {
 	    return new prescaled_ln_CR(this.subtract(one));
 	}
-	static CR ten_ninths = valueOf(10).divide(valueOf(9));
-	static CR twentyfive_twentyfourths = valueOf(25).divide(valueOf(24));
-	static CR eightyone_eightyeths = valueOf(81).divide(valueOf(80));
-	static CR ln2_1 = valueOf(7).multiply(ten_ninths.simple_ln());
-	static CR ln2_2 =
-		valueOf(2).multiply(twentyfive_twentyfourths.simple_ln());
-	static CR ln2_3 = valueOf(3).multiply(eightyone_eightyeths.simple_ln());
+
+    // Natural log of 2.  Needed for some prescaling below.
+    // ln(2) = 7ln(10/9) - 2ln(25/24) + 3ln(81/80)
+    //	     = 14atanh(1/19) - 4atanh(1/49) + 6atanh(1/161)
+	static CR ln2_1 = valueOf(14).multiply(new integral_atanh_CR(19));
+	static CR ln2_2 = valueOf(4).multiply(new integral_atanh_CR(49));
+	static CR ln2_3 = valueOf(6).multiply(new integral_atanh_CR(161));
 	static CR ln2 = ln2_1.subtract(ln2_2).add(ln2_3);
 
-    // Atan of integer reciprocal.  Used for PI.  Could perhaps
+    // Atan of integer reciprocal.  Could perhaps
     // be made public.
 	static CR atan_reciprocal(int n) {
 	    return new integral_atan_CR(n);
 	}
-    // Other constants used for PI computation.
-	static CR four = valueOf(4);
 
   // Public operations.
 /**
@@ -367,6 +888,8 @@ public volatile static boolean please_stop = false;
 *	@param a	Absolute tolerance in bits
 */
       public int compareTo(CR x, int r, int a) {
+	int quick_try = compare_cached(cache, x.cache);
+	if (0 != quick_try) return quick_try;
 	int this_msd = iter_msd(a);
 	int x_msd = x.iter_msd(this_msd > a? this_msd : a);
 	int max_msd = (x_msd > this_msd? x_msd : this_msd);
@@ -388,6 +911,42 @@ public volatile static boolean please_stop = false;
 *	@param a	Absolute tolerance in bits
 */
       public int compareTo(CR x, int a) {
+	int quick_try = compare_cached(cache, x.cache);
+	if (0 != quick_try) return quick_try;
+	int quick_a = quick_compare_prec(cache, x.cache);
+	if (a < quick_a) {
+	    quick_try = compare_approximations(x, quick_a);
+	    if (0 != quick_try) return quick_try;
+	}
+	return compare_approximations(x, a);
+      }
+
+    // Comparisons with a fine tolerance first compare approximations
+    // with about quick_compare_bits significant bits, which decide
+    // nearly all comparisons of unequal values at a small fraction of
+    // the cost.  Those approximations are cached, so later comparisons
+    // of the same values, e.g. when sorting, are then decided by
+    // compare_cached without any evaluation.
+      static final int quick_compare_bits = 53;
+
+    // The tolerance for that first step:  quick_compare_bits below
+    // the larger of the magnitudes shown by the caches c1 and c2,
+    // either of which may be null, or below 1 if neither shows one.
+      static int quick_compare_prec(appr_cache c1, appr_cache c2) {
+	int msd = Integer.MIN_VALUE;
+	if (c1 != null && c1.max_appr.abs().compareTo(big1) > 0) {
+	    msd = known_msd(c1);
+	}
+	if (c2 != null && c2.max_appr.abs().compareTo(big1) > 0) {
+	    int msd2 = known_msd(c2);
+	    if (msd2 > msd) msd = msd2;
+	}
+	if (msd == Integer.MIN_VALUE) msd = 0;
+	return msd - quick_compare_bits;
+      }
+
+    // compareTo(x, a), without the preliminary checks.
+      int compare_approximations(CR x, int a) {
 	int needed_prec = a - 1;
 	BigInteger this_appr = get_appr(needed_prec);
 	BigInteger x_appr = x.get_appr(needed_prec);
@@ -398,6 +957,47 @@ public volatile static boolean please_stop = false;
 	return 0;
       }
 
+    // Compare the values of two constructive reals, given their
+    // cached approximations, c1 and c2.  Returns 1 or -1 if the open
+    // intervals (max_appr - 1, max_appr + 1) * 2**min_prec show that
+    // the first is larger or smaller, and 0 if they overlap, or if
+    // either cache is null.  The intervals are first rounded outward
+    // to the coarser of the two precisions, which normally leaves
+    // numbers that fit in a long.  Ordinary comparisons of values
+    // that have been evaluated before, e.g. when sorting, are thus
+    // decided without evaluating anything.
+      static int compare_cached(appr_cache c1, appr_cache c2) {
+	if (c1 == null || c2 == null) return 0;
+	int d1 = 0;
+	int d2 = 0;
+	if (c1.min_prec < c2.min_prec) {
+	    d1 = c2.min_prec - c1.min_prec;
+	} else {
+	    d2 = c1.min_prec - c2.min_prec;
+	}
+	if (c1.max_appr.bitLength() < 62 && c2.max_appr.bitLength() < 62) {
+	    // Shifts by 63 already yield 0 or -1.
+	    if (d1 > 63) d1 = 63;
+	    if (d2 > 63) d2 = 63;
+	    long m1 = c1.max_appr.longValue();
+	    long m2 = c2.max_appr.longValue();
+	    long lo1 = (m1 - 1) >> d1;
+	    long hi1 = -(-(m1 + 1) >> d1);
+	    long lo2 = (m2 - 1) >> d2;
+	    long hi2 = -(-(m2 + 1) >> d2);
+	    if (lo1 >= hi2) return 1;
+	    if (hi1 <= lo2) return -1;
+	    return 0;
+	}
+	BigInteger lo1 = c1.max_appr.subtract(big1).shiftRight(d1);
+	BigInteger hi1 = c1.max_appr.add(big1).negate().shiftRight(d1).negate();
+	BigInteger lo2 = c2.max_appr.subtract(big1).shiftRight(d2);
+	BigInteger hi2 = c2.max_appr.add(big1).negate().shiftRight(d2).negate();
+	if (lo1.compareTo(hi2) >= 0) return 1;
+	if (hi1.compareTo(lo2) <= 0) return -1;
+	return 0;
+      }
+
 /**
 * Should be called only if <TT>x != y</tt>.
 * Return -1 if <TT>this < x</tt>, or +1 if <TT>this > x</tt>.
@@ -407,9 +1007,13 @@ public volatile static boolean please_stop = false;
 * version of compareTo should be used.
 */
       public int compareTo(CR x) {
+	int quick_try = compare_cached(cache, x.cache);
+	if (0 != quick_try) return quick_try;
+	// Each iteration refines the last, so the quick step of
+	// compareTo(x, a) would only repeat work.
 	for (int a = -20; ; a *= 2) {
 	    check_prec(a);
-	    int result = compareTo(x, a);
+	    int result = compare_approximations(x, a);
 	    if (0 != result) return result;
 	}
       }
@@ -418,10 +1022,21 @@ public volatile static boolean please_stop = false;
 * Equivalent to <TT>compareTo(CR.valueOf(0), a)</tt>
 */
       public int signum(int a) {
-	if (appr_valid) {
-	    int quick_try = max_appr.signum();
+	appr_cache c = cache;
+	if (c != null) {
+	    int quick_try = c.max_appr.signum();
+	    if (0 != quick_try) return quick_try;
+	}
+	int quick_a = quick_compare_prec(c, null);
+	if (a < quick_a) {
+	    int quick_try = signum_appr(quick_a);
 	    if (0 != quick_try) return quick_try;
 	}
+	return signum_appr(a);
+      }
+
+    // signum(a), without the preliminary checks.
+      int signum_appr(int a) {
 	int needed_prec = a - 1;
         BigInteger this_appr = get_appr(needed_prec);
 	return this_appr.signum();
@@ -436,9 +1051,11 @@ public volatile static boolean please_stop = false;
 * version of signum should be used.
 */
       public int signum() {
+	appr_cache c = cache;
+	if (c != null && c.max_appr.signum() != 0) return c.max_appr.signum();
 	for (int a = -20; ; a *= 2) {
 	    check_prec(a);
-	    int result = signum(a);
+	    int result = signum_appr(a);
 	    if (0 != result) return result;
 	}
       }
@@ -468,7 +1085,7 @@ public volatile static boolean please_stop = false;
 	  String whole = s.substring(start_pos, point_pos);
 	  BigInteger scaled_result = new BigInteger(whole + fraction, radix);
 	  BigInteger divisor = BigInteger.valueOf(radix).pow(fraction.length());
-	  return CR.valueOf(scaled_result).divide(CR.valueOf(divisor));
+	  return rational_CR.reduced(scaled_result, divisor);
       }
 	   
 /**
@@ -574,7 +1191,7 @@ public volatile static boolean please_stop = false;
 	scaled_int_rep += exp_adj << 52;
 	double result = Double.longBitsToDouble(scaled_int_rep);
 	if (may_underflow) {
-	    double two48 = (double)(1 << 48);
+	    double two48 = (double)(1L << 48);
 	    return result/two48/two48;
 	} else {
 	    return result;
@@ -589,19 +1206,108 @@ public volatile static boolean please_stop = false;
 	return (float)doubleValue();
     }
 
+    // The following operations simplify their results where this is
+    // cheap and exact:  Operations on rational constants are folded,
+    // nested shifts are combined, double negations cancel, and
+    // negations of products are pushed into a factor that can absorb
+    // them.  This avoids a level of recursion, and the corresponding
+    // guard bits, in each approximation.
+
+    // The value of x as { numerator, denominator }, in lowest terms
+    // with a positive denominator, if it is an integer or rational
+    // constant, otherwise null.
+    static BigInteger[] rational_value(CR x) {
+	if (x instanceof int_CR) {
+	    return new BigInteger[] { ((int_CR)x).value, big1 };
+	}
+	if (x instanceof dyadic_CR) {
+	    dyadic_CR d = (dyadic_CR)x;
+	    BigInteger m = BigInteger.valueOf(d.mantissa);
+	    if (d.exponent >= 0) {
+		return new BigInteger[] { m.shiftLeft(d.exponent), big1 };
+	    }
+	    return new BigInteger[] { m, big1.shiftLeft(-d.exponent) };
+	}
+	if (x instanceof rational_CR) {
+	    rational_CR r = (rational_CR)x;
+	    return new BigInteger[] { r.num, r.den };
+	}
+	return null;
+    }
+
+    static boolean is_zero(BigInteger value[]) {
+	return value != null && value[0].signum() == 0;
+    }
+
+    static boolean is_one(BigInteger value[]) {
+	return value != null && value[0].equals(big1) && value[1].equals(big1);
+    }
+
+    // Shifts of rational constants by at most this many bits are
+    // folded, rather than represented by a shifted_CR.
+    static final int max_folded_shift = 64;
+
 /**
 * Add two constructive reals.
 */
     public CR add(CR x) {
+	BigInteger this_value[] = rational_value(this);
+	BigInteger x_value[] = rational_value(x);
+	if (this_value != null && x_value != null) {
+	    return rational_CR.reduced(
+			this_value[0].multiply(x_value[1])
+				     .add(x_value[0].multiply(this_value[1])),
+			this_value[1].multiply(x_value[1]));
+	}
+	if (is_zero(this_value)) return x;
+	if (is_zero(x_value)) return this;
         return new add_CR(this, x);
     }
 
+/**
+* The sum of any number of constructive reals.
+* Equivalent to adding them one at a time, but much cheaper to evaluate
+* when there are many terms:  Each term is evaluated with only about
+* log2(terms.length) extra bits of precision, instead of 2 extra bits
+* per preceding addition.
+*/
+    public static CR sum(CR... terms) {
+	switch(terms.length) {
+	    case 0: return valueOf(0);
+	    case 1: return terms[0];
+	    case 2: return terms[0].add(terms[1]);
+	    default: return new sum_CR(terms.clone());
+	}
+    }
+
+/**
+* The sum of a collection of constructive reals.
+* Equivalent to <TT>sum</tt> applied to an array of the terms.
+*/
+    public static CR sum(Iterable<CR> terms) {
+	java.util.ArrayList<CR> term_list = new java.util.ArrayList<CR>();
+	for (CR term : terms) term_list.add(term);
+	return sum(term_list.toArray(new CR[term_list.size()]));
+    }
+
 /**
 * Multiply a constructive real by 2**n.
 * @param n	shift count, may be negative
 */
     public CR shiftLeft(int n) {
 	check_prec(n);
+	if (n == 0) return this;
+	if (this instanceof shifted_CR) {
+	    shifted_CR s = (shifted_CR)this;
+	    int total = s.count + n;	// Both are checked.
+	    check_prec(total);
+	    return s.op.shiftLeft(total);
+	}
+	BigInteger value[] = rational_value(this);
+	if (value != null && n <= max_folded_shift && n >= -max_folded_shift) {
+	    if (n > 0) return rational_CR.reduced(value[0].shiftLeft(n), value[1]);
+	    return rational_CR.reduced(value[0], value[1].shiftLeft(-n));
+	}
 	return new shifted_CR(this, n);
     }
 
@@ -611,35 +1317,87 @@ public volatile static boolean please_stop = false;
 */
     public CR shiftRight(int n) {
 	check_prec(n);
-	return new shifted_CR(this, -n);
+	return shiftLeft(-n);
     }
 
 /**
 * The additive inverse of a constructive real
 */
     public CR negate() {
+	if (this instanceof neg_CR) return ((neg_CR)this).op;
+	BigInteger value[] = rational_value(this);
+	if (value != null) return rational_CR.reduced(value[0].negate(), value[1]);
+	if (this instanceof mult_CR) {
+	    mult_CR m = (mult_CR)this;
+	    if (absorbs_negation(m.op1)) return m.op1.negate().multiply(m.op2);
+	    if (absorbs_negation(m.op2)) return m.op1.multiply(m.op2.negate());
+	}
         return new neg_CR(this);
     }
 
+    // Is x.negate() simpler than a neg_CR node?
+    static boolean absorbs_negation(CR x) {
+	return x instanceof neg_CR || x instanceof int_CR
+	       || x instanceof dyadic_CR || x instanceof rational_CR;
+    }
+
 /**
 * The difference between two constructive reals
 */
     public CR subtract(CR x) {
-        return new add_CR(this, x.negate());
+        return add(x.negate());
     }
 
 /**
 * The product of two constructive reals
 */
     public CR multiply(CR x) {
+	BigInteger this_value[] = rational_value(this);
+	BigInteger x_value[] = rational_value(x);
+	if (this_value != null && x_value != null) {
+	    return rational_CR.reduced(this_value[0].multiply(x_value[0]),
+				       this_value[1].multiply(x_value[1]));
+	}
+	if (is_one(this_value)) return x;
+	if (is_one(x_value)) return this;
         return new mult_CR(this, x);
     }
 
+/**
+* The product of any number of constructive reals.
+* Equivalent to multiplying them one at a time, but cheaper to evaluate
+* when there are more than a few factors:  The magnitudes of the factors
+* are determined only once, and the approximations are multiplied
+* in a balanced tree.
+*/
+    public static CR product(CR... factors) {
+	switch(factors.length) {
+	    case 0: return valueOf(1);
+	    case 1: return factors[0];
+	    case 2: return factors[0].multiply(factors[1]);
+	    default: return new prod_CR(factors.clone());
+	}
+    }
+
+/**
+* The product of a collection of constructive reals.
+* Equivalent to <TT>product</tt> applied to an array of the factors.
+*/
+    public static CR product(Iterable<CR> factors) {
+	java.util.ArrayList<CR> factor_list = new java.util.ArrayList<CR>();
+	for (CR factor : factors) factor_list.add(factor);
+	return product(factor_list.toArray(new CR[factor_list.size()]));
+    }
+
 /**
 * The multiplicative inverse of a constructive real.
 * <TT>x.inverse()</tt> is equivalent to <TT>CR.valueOf(1).divide(x)</tt>.
 */
     public CR inverse() {
+	BigInteger value[] = rational_value(this);
+	if (value != null && value[0].signum() != 0) {
+	    return rational_CR.reduced(value[1], value[0]);
+	}
         return new inv_CR(this);
     }
 
@@ -647,7 +1405,7 @@ public volatile static boolean please_stop = false;
 * The quotient of two constructive reals.
 */
     public CR divide(CR x) {
-        return new mult_CR(this, x.inverse());
+        return multiply(x.inverse());
     }
 
 /**
@@ -688,54 +1446,63 @@ public volatile static boolean please_stop = false;
     public CR exp() {
       	final int low_prec = -10;
       	BigInteger rough_appr = get_appr(low_prec);
-      	if (rough_appr.signum() < 0) return negate().exp().inverse();
-      	if (rough_appr.compareTo(big2) > 0) {
-	    CR square_root = shiftRight(1).exp();
-	    return square_root.multiply(square_root);
-      	} else {
-     	    return new prescaled_exp_CR(this);
-        }
+	// Reduce the argument to abs(this - k ln(2)) < 1/2, and
+	// compute exp(this) = 2**k * exp(this - k ln(2)).
+	long k = Math.round(rough_appr.doubleValue() / 1024 / Math.log(2));
+	  // abs(this - k ln(2)) < ln(2)/2 + 2**-9 < 1/2.
+	  // If rough_appr doesn't fit in a double, k is Long.MIN_VALUE
+	  // or Long.MAX_VALUE.
+	if (k == 0) return new prescaled_exp_CR(this);
+	if (k < -max_exp_shift) {
+	    // exp(this) < 2**(k+1), so 0 is an approximation at every
+	    // precision check_prec allows.
+	    return new exp_underflow_CR(this);
+	}
+	if (k >= max_exp_shift) {
+	    // The msd of the result fails check_prec.
+	    throw new PrecisionOverflowError();
+	}
+	CR reduced = subtract(ln2.multiply(valueOf(k)));
+	return new prescaled_exp_CR(reduced).shiftLeft((int)k);
     }
 
+    // check_prec accepts n if -max_exp_shift <= n < max_exp_shift.
+    static final int max_exp_shift = 1 << 28;
+
     static CR two = valueOf(2);
 
 /**
 * The ratio of a circle's circumference to its diameter.
 */
-    public static CR PI = four.multiply(four.multiply(atan_reciprocal(5))
-					    .subtract(atan_reciprocal(239)));
-	// pi/4 = 4*atan(1/5) - atan(1/239)
+    public static CR PI = valueOf(426880).multiply(valueOf(10005).sqrt())
+					 .divide(new chudnovsky_CR());
+	// pi = 426880 sqrt(10005)/(Chudnovsky sum)
     static CR half_pi = PI.shiftRight(1);
 
 /**
 * The trigonometric cosine function.
 */
     public CR cos() {
-	BigInteger rough_appr = get_appr(-1);
-	BigInteger abs_rough_appr = rough_appr.abs();
-	if (abs_rough_appr.compareTo(big6) >= 0) {
-	    // Subtract multiples of PI
-	    BigInteger multiplier = rough_appr.divide(big6);
-	    CR adjustment = PI.multiply(CR.valueOf(multiplier));
-	    if (multiplier.and(big1).signum() != 0) {
-		return subtract(adjustment).cos().negate();
-	    } else {
-		return subtract(adjustment).cos();
-	    }
-	} else if (abs_rough_appr.compareTo(big2) >= 0) {
-	    // Scale further with double angle formula
-	    CR cos_half = shiftRight(1).cos();
-	    return cos_half.multiply(cos_half).shiftLeft(1).subtract(one);
-	} else {
-	    return new prescaled_cos_CR(this);
-	}
+	return new sin_cos_CR(new sin_cos_pair(this), false);
     }
 
 /**
 * The trigonometric sine function.
 */
     public CR sin() {
-	return half_pi.subtract(this).cos();
+	return new sin_cos_CR(new sin_cos_pair(this), true);
+    }
+
+/**
+* The sine and cosine of <TT>this</tt>, in that order.
+* Both are computed by the same evaluation, so that asking for
+* one at some precision makes the other available at that
+* precision at no extra cost.
+*/
+    public CR[] sinCos() {
+	sin_cos_pair pair = new sin_cos_pair(this);
+	return new CR[] { new sin_cos_CR(pair, true),
+			  new sin_cos_CR(pair, false) };
     }
 
     static final BigInteger low_ln_limit = big8; /* sixteenths, i.e. 1/2 */
@@ -766,7 +1533,7 @@ public volatile static boolean please_stop = false;
 		return scaled_result.add(CR.valueOf(extra_bits).multiply(ln2));
 	    }
 	}
-	return simple_ln();
+	return new agm_ln_CR(this);
     }
 
 /**
@@ -776,6 +1543,12 @@ public volatile static boolean please_stop = false;
 	return new sqrt_CR(this);
     }
 
+    // The arctangent.  Used by UnaryCRFunction.atanFunction and
+    // asinFunction.
+    CR atan() {
+	return new atan_CR(this);
+    }
+
 }  // end of CR
 
 
@@ -794,17 +1567,23 @@ abstract class slow_CR extends CR {
     static int prec_incr = 32;
     public BigInteger get_appr(int precision) {
 	check_prec(precision);
-	if (appr_valid && precision >= min_prec) {
-	    return scale(max_appr, min_prec - precision);
-	} else {
-	    int eval_prec = (precision >= max_prec? max_prec :
-			     (precision - prec_incr + 1) & ~(prec_incr - 1));
-	    BigInteger result = approximate(eval_prec);
-	    min_prec = eval_prec;
-	    max_appr = result;
-	    appr_valid = true;
-	    return scale(result, eval_prec - precision);   
+	BigInteger result = cached_appr(precision);
+	if (result != null) return result;
+	if (should_share()) {
+	    synchronized(this) {
+		result = cached_appr(precision);
+		if (result != null) return result;
+		return evaluate(precision);
+	    }
 	}
+	return evaluate(precision);
+    }
+    private BigInteger evaluate(int precision) {
+	int eval_prec = (precision >= max_prec? max_prec :
+			 (precision - prec_incr + 1) & ~(prec_incr - 1));
+	BigInteger result = limited_approximate(eval_prec);
+	update_cache(eval_prec, result);
+	return scale(result, eval_prec - precision);   
     }
 }
 
@@ -818,6 +1597,151 @@ class int_CR extends CR {
     protected BigInteger approximate(int p) {
 	return scale(value, -p) ;
     }
+    CR[] derivative_operands() {
+	return new CR[0];
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return null;
+    }
+    CR[] enclosure_operands() {
+	return new CR[0];
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	return new BigInteger[] { shift(value, -p), ceil_shift(value, -p) };
+    }
+}
+
+// Representation of the constant mantissa * 2**exponent.  Private.
+// Used for integers that fit in a long, and for doubles.  If
+// exponent < 0, mantissa is odd.  Approximations that fit in a long
+// are computed with long arithmetic, and the BigInteger is then
+// allocated by BigInteger.valueOf, which shares those for small
+// values, such as the 0 returned at coarse precisions.
+class dyadic_CR extends CR {
+    final long mantissa;
+    final int exponent;
+    dyadic_CR(long m, int e) {
+	mantissa = m;
+	exponent = e;
+    }
+
+    // m * 2**e, with the mantissa made odd if e < 0.
+    static dyadic_CR normalized(long m, int e) {
+	if (m == 0) return new dyadic_CR(0, 0);
+	if (e < 0) {
+	    int zeros = Math.min(Long.numberOfTrailingZeros(m), -e);
+	    m >>= zeros;
+	    e += zeros;
+	}
+	return new dyadic_CR(m, e);
+    }
+
+    // The bitLength of BigInteger.valueOf(x).
+    static int long_bit_length(long x) {
+	return 64 - Long.numberOfLeadingZeros(x < 0? ~x : x);
+    }
+
+    protected BigInteger approximate(int p) {
+	long shift = (long)exponent - p;
+	if (shift >= 0) {
+	    if (long_bit_length(mantissa) + shift < 64) {
+		return BigInteger.valueOf(mantissa << shift);
+	    }
+	    if (shift > Integer.MAX_VALUE) throw new PrecisionOverflowError();
+	    return BigInteger.valueOf(mantissa).shiftLeft((int)shift);
+	}
+	// abs(mantissa) < 2**63, so this rounds to 0.
+	if (shift < -63) return big0;
+	long twice = mantissa >> (-shift - 1);	// floor(2 * result)
+	return BigInteger.valueOf((twice >> 1) + (twice & 1));
+    }
+    CR[] derivative_operands() {
+	return new CR[0];
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return null;
+    }
+    CR[] enclosure_operands() {
+	return new CR[0];
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	long shift = (long)exponent - p;
+	BigInteger m = BigInteger.valueOf(mantissa);
+	if (shift < -64) shift = -64;	// Only the sign of m matters.
+	if (shift > Integer.MAX_VALUE) throw new PrecisionOverflowError();
+	return new BigInteger[] { shift(m, (int)shift),
+				  ceil_shift(m, (int)shift) };
+    }
+}
+
+// Representation of a rational constant num/den, in lowest terms,
+// with den > 1.  Private.  Arithmetic on rational constants is
+// performed exactly when the nodes are constructed, so that it does
+// not appear in the expression at all.  See CR.add.
+class rational_CR extends CR {
+    final BigInteger num;
+    final BigInteger den;
+    rational_CR(BigInteger n, BigInteger d) {
+	num = n;
+	den = d;
+    }
+
+    // The constant n/d, d != 0, as a dyadic_CR or int_CR if
+    // possible.
+    static CR reduced(BigInteger n, BigInteger d) {
+	if (d.signum() < 0) {
+	    n = n.negate();
+	    d = d.negate();
+	}
+	BigInteger gcd = n.gcd(d);
+	if (!gcd.equals(big1)) {
+	    n = n.divide(gcd);
+	    d = d.divide(gcd);
+	}
+	if (d.equals(big1)) return valueOf(n);
+	if (d.bitCount() == 1 && n.bitLength() < 64) {
+	    return new dyadic_CR(n.longValue(), 1 - d.bitLength());
+	}
+	return new rational_CR(n, d);
+    }
+
+    // floor(n/d), for d > 0.
+    static BigInteger floor_divide(BigInteger n, BigInteger d) {
+	BigInteger qr[] = n.divideAndRemainder(d);
+	if (qr[1].signum() < 0) return qr[0].subtract(big1);
+	return qr[0];
+    }
+
+    // { num * 2**-p, den }, scaled to integers.
+    BigInteger[] scaled(int p) {
+	if (p <= 0) return new BigInteger[] { num.shiftLeft(-p), den };
+	return new BigInteger[] { num, den.shiftLeft(p) };
+    }
+
+    // A single division, rounded to nearest.
+    protected BigInteger approximate(int p) {
+	// abs(num/den) < 2**(num.bitLength() - den.bitLength() + 1).
+	if (num.bitLength() - den.bitLength() + 1 <= p - 1) return big0;
+	BigInteger nd[] = scaled(p);
+	return floor_divide(nd[0].shiftLeft(1).add(nd[1]), nd[1].shiftLeft(1));
+    }
+    CR[] derivative_operands() {
+	return new CR[0];
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return null;
+    }
+    CR[] enclosure_operands() {
+	return new CR[0];
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	if (num.bitLength() - den.bitLength() + 1 <= p) {
+	    return new BigInteger[] { bigm1, big1 };
+	}
+	BigInteger nd[] = scaled(p);
+	return new BigInteger[] { floor_divide(nd[0], nd[1]),
+				  floor_divide(nd[0].negate(), nd[1]).negate() };
+    }
 }
 
 // Representation of the sum of 2 constructive reals.  Private.
@@ -832,21 +1756,130 @@ class add_CR extends CR {
 	// Args need to be evaluated so that each error is < 1/4 ulp.
 	// Rounding error from the cale call is <= 1/2 ulp, so that
 	// final error is < 1 ulp.
+	if (should_fork(op1, p-2, op2, p-2)) {
+	    BigInteger apprs[] = get_apprs_in_parallel(op1, p-2, op2, p-2);
+	    return scale(apprs[0].add(apprs[1]), -2);
+	}
 	return scale(op1.get_appr(p-2).add(op2.get_appr(p-2)), -2);
     }
+    boolean next_operand(int p, operand_request r) {
+	return op1.appr_request(p-2, r) || op2.appr_request(p-2, r);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op1, op2 };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return add_derivatives(op1.derivative(var, memo),
+			       op2.derivative(var, memo));
+    }
+    CR[] enclosure_operands() {
+	return new CR[] { op1, op2 };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger x[] = operand_enclosures[0];
+	BigInteger y[] = operand_enclosures[1];
+	return new BigInteger[] { x[0].add(y[0]), x[1].add(y[1]) };
+    }
 }
 
-// Representation of a CR multiplied by 2**n
-class shifted_CR extends CR {
-    CR op;
-    int count;
-    shifted_CR(CR x, int n) {
-	op = x;
-	count = n;
+// Representation of the sum of n constructive reals.  Private.
+class sum_CR extends CR {
+    final CR terms[];
+    final int guard_bits;
+    sum_CR(CR x[]) {
+	terms = x;
+	// The number of terms is <= 2**(guard_bits - 2).
+	guard_bits = 34 - Integer.numberOfLeadingZeros(x.length - 1);
+    }
+    protected BigInteger approximate(int p) {
+	// Each term is evaluated with an error < 1/(4 * terms.length)
+	// ulp, so that the total error before the final rounding is < 1/4
+	// ulp, and the final error is < 3/4 ulp.
+	int term_prec = p - guard_bits;
+	BigInteger sum = big0;
+	for (int i = 0; i < terms.length; ++i) {
+	    sum = sum.add(terms[i].get_appr(term_prec));
+	}
+	return scale(sum, -guard_bits);
+    }
+    // Terms before start are known to be cached to at least precision
+    // prec.  Keeps prefetch_operands, which calls next_operand once per
+    // term, from taking quadratic time.
+    static final class scan_hint {
+	final int prec;
+	final int start;
+	scan_hint(int p, int i) {
+	    prec = p;
+	    start = i;
+	}
+    }
+    volatile scan_hint hint;
+    boolean next_operand(int p, operand_request r) {
+	int term_prec = p - guard_bits;
+	scan_hint h = hint;
+	int start = (h != null && h.prec <= term_prec? h.start : 0);
+	for (int i = start; i < terms.length; ++i) {
+	    if (terms[i].appr_request(term_prec, r)) {
+		if (i > start) hint = new scan_hint(term_prec, i);
+		return true;
+	    }
+	}
+	return false;
+    }
+    CR[] derivative_operands() {
+	return terms;
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	java.util.ArrayList<CR> derivs = new java.util.ArrayList<CR>();
+	for (int i = 0; i < terms.length; ++i) {
+	    CR d = terms[i].derivative(var, memo);
+	    if (d != null) derivs.add(d);
+	}
+	return derivs.isEmpty()? null : sum(derivs);
+    }
+    CR[] enclosure_operands() {
+	return terms;
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger lo = big0;
+	BigInteger hi = big0;
+	for (int i = 0; i < operand_enclosures.length; ++i) {
+	    lo = lo.add(operand_enclosures[i][0]);
+	    hi = hi.add(operand_enclosures[i][1]);
+	}
+	return new BigInteger[] { lo, hi };
+    }
+}
+
+// Representation of a CR multiplied by 2**n
+class shifted_CR extends CR {
+    CR op;
+    int count;
+    shifted_CR(CR x, int n) {
+	op = x;
+	count = n;
     }
     protected BigInteger approximate(int p) {
 	return op.get_appr(p - count);
     }
+    boolean next_operand(int p, operand_request r) {
+	return op.appr_request(p - count, r);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.shiftLeft(count);
+    }
+    CR[] enclosure_operands() {
+	return new CR[] { op };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger x[] = operand_enclosures[0];
+	return new BigInteger[] { shift(x[0], count),
+				  ceil_shift(x[1], count) };
+    }
 }
 
 // Representation of the negation of a constructive real.  Private.
@@ -858,6 +1891,23 @@ class neg_CR extends CR {
     protected BigInteger approximate(int p) {
 	return op.get_appr(p).negate();
     }
+    boolean next_operand(int p, operand_request r) {
+	return op.appr_request(p, r);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.negate();
+    }
+    CR[] enclosure_operands() {
+	return new CR[] { op };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger x[] = operand_enclosures[0];
+	return new BigInteger[] { x[1].negate(), x[0].negate() };
+    }
 }
 
 // Representation of:
@@ -866,7 +1916,7 @@ class neg_CR extends CR {
 // Assumes x = y if s = 0 
 class select_CR extends CR {
     CR selector;
-    int selector_sign;
+    volatile int selector_sign;
     CR op1;
     CR op2;
     select_CR(CR s, CR x, CR y) {
@@ -895,6 +1945,42 @@ class select_CR extends CR {
 	    return scale(op2_appr, -1);
 	}
     }
+    // Mirrors approximate.
+    boolean next_operand(int p, operand_request r) {
+	int sign = selector_sign;
+	if (sign < 0) return op1.appr_request(p, r);
+	if (sign > 0) return op2.appr_request(p, r);
+	if (op1.appr_request(p-1, r) || op2.appr_request(p-1, r)) return true;
+	BigInteger diff = op1.get_appr(p-1).subtract(op2.get_appr(p-1)).abs();
+	if (diff.compareTo(big1) <= 0) return false;
+	return selector.signum_request(r);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op1, op2 };
+    }
+    // The derivative of whichever operand is selected.  If the
+    // selector is 0, the result is the derivative of op2, and is
+    // meaningful only if the operands have the same derivative.
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d1 = op1.derivative(var, memo);
+	CR d2 = op2.derivative(var, memo);
+	if (d1 == null && d2 == null) return null;
+	return new select_CR(selector, d1 == null? valueOf(0) : d1,
+			     d2 == null? valueOf(0) : d2);
+    }
+    // The union of the operands' enclosures, unless that of the
+    // selector determines its sign.
+    CR[] enclosure_operands() {
+	return new CR[] { selector, op1, op2 };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger s[] = operand_enclosures[0];
+	BigInteger x[] = operand_enclosures[1];
+	BigInteger y[] = operand_enclosures[2];
+	if (s[1].signum() < 0) return x;
+	if (s[0].signum() > 0) return y;
+	return new BigInteger[] { x[0].min(y[0]), x[1].max(y[1]) };
+    }
 }
 
 // Representation of the product of 2 constructive reals. Private.
@@ -906,6 +1992,10 @@ class mult_CR extends CR {
 	op2 = y;
     }
     protected BigInteger approximate(int p) {
+	// Local copies, since we may swap them, and other threads
+	// may be evaluating this node.
+	CR op1 = this.op1;
+	CR op2 = this.op2;
 	int half_prec = (p >> 1) - 1;
     	int msd_op1 = op1.msd(half_prec);
     	int msd_op2;
@@ -933,21 +2023,277 @@ class mult_CR extends CR {
 		// Thus each approximation contributes 1/4 ulp
 		// to the rounding error, and the final rounding adds
 		// another 1/2 ulp.
-	BigInteger appr2 = op2.get_appr(prec2);
-        if (appr2.signum() == 0) return big0;
-	msd_op2 = op2.known_msd();
+	// Find msd_op2 before evaluating either operand to full
+	// precision, so that the two evaluations are independent.
+	// Normally this requires only a low precision approximation.
+	msd_op2 = op2.iter_msd(prec2);
+	if (msd_op2 == Integer.MIN_VALUE) {
+	    // abs(op2) < 2**prec2, so abs(product) < 2**(p-2).
+	    return big0;
+	}
 	int prec1 = p - msd_op2 - 3;	// Precision needed for op1.
-	BigInteger appr1 = op1.get_appr(prec1);
+	BigInteger appr1, appr2;
+	if (should_fork(op1, prec1, op2, prec2)) {
+	    BigInteger apprs[] = get_apprs_in_parallel(op1, prec1, op2, prec2);
+	    appr1 = apprs[0];
+	    appr2 = apprs[1];
+	} else {
+	    appr2 = op2.get_appr(prec2);
+	    appr1 = op1.get_appr(prec1);
+	}
 	int scale_digits =  prec1 + prec2 - p;
 	return scale(appr1.multiply(appr2), scale_digits);
     }
+    // Mirrors approximate.
+    boolean next_operand(int p, operand_request r) {
+	CR op1 = this.op1;
+	CR op2 = this.op2;
+	int half_prec = (p >> 1) - 1;
+	if (op1.msd_request(half_prec, r)) return true;
+    	int msd_op1 = op1.msd(half_prec);
+	if (msd_op1 == Integer.MIN_VALUE) {
+	    if (op2.msd_request(half_prec, r)) return true;
+	    int msd_op2 = op2.msd(half_prec);
+	    if (msd_op2 == Integer.MIN_VALUE) return false;
+	    CR tmp;
+	    tmp = op1;
+	    op1 = op2;
+	    op2 = tmp;
+	    msd_op1 = msd_op2;
+	}
+        int prec2 = p - msd_op1 - 3;
+	if (op2.iter_msd_request(prec2, r)) return true;
+	int msd_op2 = op2.iter_msd(prec2);
+	if (msd_op2 == Integer.MIN_VALUE) return false;
+	int prec1 = p - msd_op2 - 3;
+	return op2.appr_request(prec2, r) || op1.appr_request(prec1, r);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op1, op2 };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d1 = op1.derivative(var, memo);
+	CR d2 = op2.derivative(var, memo);
+	return add_derivatives(d1 == null? null : d1.multiply(op2),
+			       d2 == null? null : op1.multiply(d2));
+    }
+    CR[] enclosure_operands() {
+	return new CR[] { op1, op2 };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	return multiply_enclosures(p, operand_enclosures[0],
+				   operand_enclosures[1]);
+    }
+}
+
+// Representation of the product of n constructive reals.  Private.
+// If abs(factors[i]) < 2**u[i], and U is the sum of the u[i], then
+// the product of a subset S of the factors is approximated with precision
+// base + sum of u[i] over S, where base = p - guard_bits - U.
+// In particular factor i is evaluated to precision base + u[i].
+// Each of these n leaf approximations, and each of the n - 1 roundings
+// of partial products, then contributes an error of at most
+// 2**(p - guard_bits) times a factor close to one to the product.
+// Since 2n < 2**(guard_bits - 2), the total error is < 1/4 ulp before the
+// final rounding.
+class prod_CR extends CR {
+    final CR factors[];
+    final int guard_bits;
+    // Known bounds on the msds of the factors, or Integer.MIN_VALUE
+    // if not yet known.  Immutable once published.
+    volatile int known_msds[];
+    prod_CR(CR x[]) {
+	factors = x;
+	guard_bits = 2 + bound_log2(2 * x.length);
+	int msds[] = new int[x.length];
+	java.util.Arrays.fill(msds, Integer.MIN_VALUE);
+	known_msds = msds;
+    }
+
+    // The probe precision used to find the magnitudes of the factors.
+    // Factors smaller than 2**probe_prec are not distinguished from
+    // 2**probe_prec.
+    static int probe_prec(int p) {
+	return (p >> 1) - 1;
+    }
+
+    // Return upper bounds on the log2 of the absolute values of the
+    // factors, computing the msds of factors not yet known.
+    int[] bounds(int p) {
+	int probe = probe_prec(p);
+	int msds[] = known_msds;
+	int result[] = new int[factors.length];
+	int new_msds[] = null;
+	for (int i = 0; i < factors.length; ++i) {
+	    int msd = msds[i];
+	    if (msd == Integer.MIN_VALUE) {
+		msd = factors[i].iter_msd(probe);
+		if (msd != Integer.MIN_VALUE) {
+		    if (new_msds == null) new_msds = msds.clone();
+		    new_msds[i] = msd;
+		}
+	    }
+	    result[i] = (msd == Integer.MIN_VALUE? probe : msd + 1);
+	}
+	if (new_msds != null) known_msds = new_msds;
+	return result;
+    }
+
+    // The product of the approximations of factors lo through hi - 1,
+    // at precision base + the sum of their bounds.
+    static BigInteger multiply_range(BigInteger apprs[], int lo, int hi,
+				     int base) {
+	if (hi - lo == 1) return apprs[lo];
+	int mid = (lo + hi) >>> 1;
+	BigInteger left = multiply_range(apprs, lo, mid, base);
+	BigInteger right = multiply_range(apprs, mid, hi, base);
+	if (left.signum() == 0 || right.signum() == 0) return big0;
+	return scale(left.multiply(right), base);
+    }
+
+    // p - guard_bits - total, checked for overflow.
+    int checked_base(int p, long total) {
+	long base = (long)p - guard_bits - total;
+	if (base < Integer.MIN_VALUE) throw new PrecisionOverflowError();
+	check_prec((int)base);
+	return (int)base;
+    }
+
+    protected BigInteger approximate(int p) {
+	int u[] = bounds(p);
+	long total = 0;
+	for (int i = 0; i < u.length; ++i) total += u[i];
+	if (total <= p - 1) return big0;	// abs(product) < 1/2 ulp
+	int base = checked_base(p, total);
+	BigInteger apprs[] = new BigInteger[factors.length];
+	for (int i = 0; i < factors.length; ++i) {
+	    apprs[i] = factors[i].get_appr(base + u[i]);
+	}
+	return scale(multiply_range(apprs, 0, apprs.length, base),
+		     -guard_bits);
+    }
+
+    // Mirrors approximate.
+    boolean next_operand(int p, operand_request r) {
+	int probe = probe_prec(p);
+	int msds[] = known_msds;
+	for (int i = 0; i < factors.length; ++i) {
+	    if (msds[i] == Integer.MIN_VALUE
+		&& factors[i].iter_msd_request(probe, r)) {
+		return true;
+	    }
+	}
+	int u[] = bounds(p);
+	long total = 0;
+	for (int i = 0; i < u.length; ++i) total += u[i];
+	if (total <= p - 1) return false;
+	int base = checked_base(p, total);
+	for (int i = 0; i < factors.length; ++i) {
+	    if (factors[i].appr_request(base + u[i], r)) return true;
+	}
+	return false;
+    }
+    CR[] derivative_operands() {
+	return factors;
+    }
+    // The sum over i of factors[i]' times the product of the others.
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR result = null;
+	for (int i = 0; i < factors.length; ++i) {
+	    CR d = factors[i].derivative(var, memo);
+	    if (d == null) continue;
+	    CR others[] = new CR[factors.length];
+	    others[0] = d;
+	    for (int j = 0, k = 1; j < factors.length; ++j) {
+		if (j != i) others[k++] = factors[j];
+	    }
+	    result = add_derivatives(result, product(others));
+	}
+	return result;
+    }
+    CR[] enclosure_operands() {
+	return factors;
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger result[] = operand_enclosures[0];
+	for (int i = 1; i < operand_enclosures.length; ++i) {
+	    result = multiply_enclosures(p, result, operand_enclosures[i]);
+	}
+	return result;
+    }
 }
 
-// Representation of the multiplicative invers of a constructive
-// real.  Private.  Should use Newton iteration to refine estimates.
+// Representation of the multiplicative inverse of a constructive
+// real.  Private.  Uses Newton iteration to refine estimates.
 class inv_CR extends CR {
     CR op;
     inv_CR(CR x) { op = x; }
+    // Quotients with fewer bits than this are computed by a single
+    // division.
+    static final int newton_min_bits = 1500;
+
+    // An approximation to 2**k/d, for d > 0, obtained by refining
+    // y, an approximation to 2**y_k/d with relative error < 2**-good_bits,
+    // by Newton iteration: y' = y + y(1 - d*y).
+    // Each step roughly doubles the number of correct bits, and uses only
+    // as many bits of d and y as that step needs, so that the total cost
+    // is a few multiplications at the final size.
+    // If y_k < k, the error in the result is < 1.4.  Each step introduces
+    // an error < 1 in the last place from rounding, < 1/8 from
+    // truncating y and the error term, < 1/4 from the quadratic term, and
+    // a relative error < 2**-(step_bits + 7) from truncating d.
+    static BigInteger newton_reciprocal(BigInteger d, int k,
+					BigInteger y, int y_k, int good_bits) {
+	int d_len = d.bitLength();
+	int result_bits = k - d_len + 1;	// 2**k/d < 2**result_bits
+	while (y_k < k) {
+	    int step_bits = 2*good_bits - 2;
+	    if (step_bits > result_bits) step_bits = result_bits;
+	    check_abort(step_bits);
+	    int step_k = step_bits + d_len - 1;
+	    // Use only step_bits + 8 bits of d.
+	    int d_trunc = d_len - step_bits - 8;
+	    if (d_trunc < 0) d_trunc = 0;
+	    BigInteger trunc_d = d.shiftRight(d_trunc);
+	    int trunc_k = step_k - d_trunc;
+	    BigInteger y0 = shift(y, step_k - y_k);
+	    BigInteger error = big1.shiftLeft(trunc_k)
+				   .subtract(trunc_d.multiply(y0));
+		// |error| < 2**(trunc_k - good_bits), and the correction
+		// y0 * error/2**trunc_k is needed only to within 1/8,
+		// so we need about step_bits - good_bits bits of each.
+	    int y_trunc = good_bits - 4;
+	    if (y_trunc < 0) y_trunc = 0;
+	    int error_trunc = trunc_k - step_bits - 4;
+	    if (error_trunc < 0) error_trunc = 0;
+	    BigInteger correction =
+		y0.shiftRight(y_trunc).multiply(error.shiftRight(error_trunc))
+		  .shiftRight(trunc_k - y_trunc - error_trunc);
+	    y = y0.add(correction);
+	    y_k = step_k;
+	    good_bits = step_bits - 2;
+	}
+	return shift(y, k - y_k);
+    }
+
+    // Should we compute a quotient with digits_needed digits by refining
+    // the previous approximation?
+    static boolean use_newton(int digits_needed, appr_cache previous) {
+	return previous != null && digits_needed >= newton_min_bits
+	       && 4*(previous.max_appr.bitLength() - 4) >= digits_needed;
+    }
+
+    // Mirrors approximate.
+    boolean next_operand(int p, operand_request r) {
+	if (op.iter_msd_request(Integer.MIN_VALUE, r)) return true;
+	int msd = op.msd();
+	int digits_needed = 1 - msd - p + 3;
+	int prec_needed = msd - digits_needed;
+	if (-p - prec_needed < 0) return false;
+	if (use_newton(digits_needed, cache)) prec_needed -= 2;
+	return op.appr_request(prec_needed, r);
+    }
+
     protected BigInteger approximate(int p) {
 	int msd = op.msd();
 	int inv_msd = 1 - msd;
@@ -968,33 +2314,382 @@ class inv_CR extends CR {
 	int prec_needed = msd - digits_needed;
 	int log_scale_factor = -p - prec_needed;
 	if (log_scale_factor < 0) return big0;
-	BigInteger dividend = big1.shiftLeft(log_scale_factor);
-	BigInteger scaled_divisor = op.get_appr(prec_needed);
-	BigInteger abs_scaled_divisor = scaled_divisor.abs();
-	BigInteger adj_dividend = dividend.add(
+	BigInteger result;
+	BigInteger scaled_divisor;
+	// Our previous approximation, if any, approximates
+	// 2**(-min_prec)/op with a relative error < 2**-(bitLength - 2).
+	// If it has a reasonable fraction of the bits we need, refining it
+	// by Newton iteration is cheaper than a division.
+	// (From scratch, Newton iteration is no faster than
+	// BigInteger.divide.)
+	appr_cache previous = cache;
+	if (!use_newton(digits_needed, previous)) {
+	    BigInteger dividend = big1.shiftLeft(log_scale_factor);
+	    scaled_divisor = op.get_appr(prec_needed);
+	    BigInteger abs_scaled_divisor = scaled_divisor.abs();
+	    BigInteger adj_dividend = dividend.add(
 					abs_scaled_divisor.shiftRight(1));
 		// Adjustment so that final result is rounded.
-	BigInteger result = adj_dividend.divide(abs_scaled_divisor);
+	    result = adj_dividend.divide(abs_scaled_divisor);
+	} else {
+	    // As above, but for precision p - 2, and with the quotient
+	    // computed by newton_reciprocal.  Its error of < 1.4,
+	    // instead of 1/2 from rounding, still leaves the total
+	    // < 1.9/4 ulp before the final rounding.
+	    prec_needed -= 2;
+	    log_scale_factor += 4;
+	    scaled_divisor = op.get_appr(prec_needed);
+	    BigInteger abs_scaled_divisor = scaled_divisor.abs();
+	    // The previous approximation approximates
+	    // 2**(log_scale_factor + p - 2 - min_prec)/abs_scaled_divisor.
+	    // Both it and abs_scaled_divisor contribute a relative error
+	    // < 2**-(bitLength - 2).
+	    result = scale(newton_reciprocal(abs_scaled_divisor,
+					     log_scale_factor,
+					     previous.max_appr.abs(),
+					     log_scale_factor + p - 2
+						- previous.min_prec,
+					     previous.max_appr.bitLength() - 4),
+			   -2);
+	}
 	if (scaled_divisor.signum() < 0) {
 	  return result.negate();
 	} else {
 	  return result;
 	}
     }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.multiply(multiply(this)).negate();
+    }
+    // 1/x is decreasing on each side of 0.  If the enclosure of op
+    // contains 0, or p > 0, we evaluate this node normally instead.
+    CR[] enclosure_operands() {
+	return new CR[] { op };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger x[] = operand_enclosures[0];
+	if (p > 0 || x[0].signum() != x[1].signum() || x[0].signum() == 0) {
+	    return super.enclosure(p, null);
+	}
+	BigInteger dividend = big1.shiftLeft(-2*p);
+	BigInteger lo[] = dividend.divideAndRemainder(x[1]);
+	BigInteger hi[] = dividend.divideAndRemainder(x[0]);
+	// Round the quotients down and up, respectively.
+	if (lo[1].signum() != 0 && x[1].signum() < 0) {
+	    lo[0] = lo[0].subtract(big1);
+	}
+	if (hi[1].signum() != 0 && x[0].signum() > 0) {
+	    hi[0] = hi[0].add(big1);
+	}
+	return new BigInteger[] { lo[0], hi[0] };
+    }
 }
 
 
+// A mutable integer, for the inner loops of Taylor series whose
+// terms need only multiplication and division by small integers.
+// Private.  Sign and magnitude, with the magnitude in 32-bit limbs,
+// least significant first.  Operations are performed in place, and
+// allocate only when the magnitude outgrows its array, so that such
+// a loop costs O(n) time per term and produces no garbage.
+final class fixed_accumulator {
+    static final long mask = 0xffffffffL;
+    // Whether the series loops may use fixed_accumulator.  For testing
+    // them against the BigInteger versions, which must give the same
+    // results.
+    static volatile boolean enabled = true;
+    int mag[] = new int[4];
+    int len;		// Significant limbs.  0 iff the value is 0.
+    boolean negative;
+
+    fixed_accumulator() {}
+    fixed_accumulator(BigInteger x) { set(x); }
+
+    // Is x, divided by its largest power of 2 factor, small enough
+    // to be used with multiply_small?
+    static boolean has_short_significand(BigInteger x) {
+	return x.signum() != 0 && x.bitLength() - x.getLowestSetBit() <= 30;
+    }
+
+    void ensure_capacity(int n) {
+	if (mag.length < n) {
+	    mag = java.util.Arrays.copyOf(mag, Math.max(n, 2 * mag.length));
+	}
+    }
+
+    void normalize() {
+	while (len > 0 && mag[len - 1] == 0) --len;
+	if (len == 0) negative = false;
+    }
+
+    void set(BigInteger x) {
+	byte bytes[] = x.abs().toByteArray();	// Big endian.
+	int n = (bytes.length + 3) >>> 2;
+	ensure_capacity(n);
+	for (int i = 0; i < n; ++i) {
+	    int limb = 0;
+	    for (int j = 0; j < 4; ++j) {
+		int k = bytes.length - 1 - 4*i - j;
+		if (k >= 0) limb |= (bytes[k] & 0xff) << (8*j);
+	    }
+	    mag[i] = limb;
+	}
+	len = n;
+	negative = x.signum() < 0;
+	normalize();
+    }
+
+    void set(fixed_accumulator x) {
+	ensure_capacity(x.len);
+	System.arraycopy(x.mag, 0, mag, 0, x.len);
+	len = x.len;
+	negative = x.negative;
+    }
+
+    BigInteger to_BigInteger() {
+	if (len == 0) return CR.big0;
+	byte bytes[] = new byte[4*len];
+	for (int i = 0; i < len; ++i) {
+	    int k = 4*(len - 1 - i);
+	    bytes[k] = (byte)(mag[i] >>> 24);
+	    bytes[k + 1] = (byte)(mag[i] >>> 16);
+	    bytes[k + 2] = (byte)(mag[i] >>> 8);
+	    bytes[k + 3] = (byte)mag[i];
+	}
+	return new BigInteger(negative? -1 : 1, bytes);
+    }
+
+    // The bitLength of the magnitude.
+    int bit_length() {
+	if (len == 0) return 0;
+	return 32*len - Integer.numberOfLeadingZeros(mag[len - 1]);
+    }
+
+    boolean test_bit(int n) {
+	int limb = n >>> 5;
+	return limb < len && ((mag[limb] >>> (n & 31)) & 1) != 0;
+    }
+
+    // Is any of the bits 0 ... n-1 of the magnitude set?
+    boolean any_bit_below(int n) {
+	int limbs = Math.min(n >>> 5, len);
+	for (int i = 0; i < limbs; ++i) {
+	    if (mag[i] != 0) return true;
+	}
+	int bits = n & 31;
+	return limbs < len && bits != 0 && (mag[limbs] & ((1 << bits) - 1)) != 0;
+    }
+
+    // Multiply by m, abs(m) < 2**31.
+    void multiply_small(int m) {
+	if (m < 0) {
+	    negative = !negative;
+	    m = -m;
+	}
+	long carry = 0;
+	for (int i = 0; i < len; ++i) {
+	    long t = (mag[i] & mask) * m + carry;
+	    mag[i] = (int)t;
+	    carry = t >>> 32;
+	}
+	if (carry != 0) {
+	    ensure_capacity(len + 1);
+	    mag[len++] = (int)carry;
+	}
+	normalize();
+    }
+
+    // Divide by d, 0 < d < 2**31, truncating toward 0, like
+    // BigInteger.divide.
+    void divide_small(int d) {
+	long remainder = 0;
+	for (int i = len - 1; i >= 0; --i) {
+	    long current = (remainder << 32) | (mag[i] & mask);
+	    mag[i] = (int)(current / d);
+	    remainder = current % d;
+	}
+	normalize();
+    }
+
+    // Divide by 2**n, n > 0, rounding to nearest, with ties toward
+    // +infinity, so that the result is that of CR.scale(x, -n).
+    // The magnitude is rounded up if the discarded bits exceed 1/2,
+    // or equal 1/2 and x is positive.
+    void shift_right_rounded(int n) {
+	boolean round_up = test_bit(n - 1)
+			   && (!negative || any_bit_below(n - 1));
+	int limbs = n >>> 5;
+	int bits = n & 31;
+	if (limbs >= len) {
+	    len = 0;
+	} else {
+	    int new_len = len - limbs;
+	    for (int i = 0; i < new_len; ++i) {
+		int limb = mag[i + limbs] >>> bits;
+		if (bits != 0 && i + 1 < new_len) {
+		    limb |= mag[i + limbs + 1] << (32 - bits);
+		}
+		mag[i] = limb;
+	    }
+	    len = new_len;
+	}
+	if (round_up) add_magnitude(one_limb);
+	normalize();
+    }
+
+    static final fixed_accumulator one_limb =
+	new fixed_accumulator(CR.big1);
+
+    void add(fixed_accumulator x) {
+	if (negative == x.negative) {
+	    add_magnitude(x);
+	} else {
+	    subtract_magnitude(x);
+	}
+    }
+
+    void subtract(fixed_accumulator x) {
+	if (negative != x.negative) {
+	    add_magnitude(x);
+	} else {
+	    subtract_magnitude(x);
+	}
+    }
+
+    // abs(this) += abs(x).
+    void add_magnitude(fixed_accumulator x) {
+	int n = Math.max(len, x.len);
+	ensure_capacity(n + 1);
+	long carry = 0;
+	for (int i = 0; i < n; ++i) {
+	    long t = (i < len? mag[i] & mask : 0)
+		     + (i < x.len? x.mag[i] & mask : 0) + carry;
+	    mag[i] = (int)t;
+	    carry = t >>> 32;
+	}
+	len = n;
+	if (carry != 0) mag[len++] = 1;
+    }
+
+    // abs(this) -= abs(x), changing the sign if the result is negative.
+    void subtract_magnitude(fixed_accumulator x) {
+	int cmp = Integer.compare(len, x.len);
+	for (int i = len - 1; cmp == 0 && i >= 0; --i) {
+	    cmp = Long.compare(mag[i] & mask, x.mag[i] & mask);
+	}
+	long borrow = 0;
+	if (cmp >= 0) {
+	    for (int i = 0; i < len; ++i) {
+		long t = (mag[i] & mask) - (i < x.len? x.mag[i] & mask : 0)
+			 - borrow;
+		mag[i] = (int)t;
+		borrow = t < 0? 1 : 0;
+	    }
+	} else {
+	    ensure_capacity(x.len);
+	    for (int i = 0; i < x.len; ++i) {
+		long t = (x.mag[i] & mask) - (i < len? mag[i] & mask : 0)
+			 - borrow;
+		mag[i] = (int)t;
+		borrow = t < 0? 1 : 0;
+	    }
+	    len = x.len;
+	    negative = !negative;
+	}
+	normalize();
+    }
+}
+
 // Representation of the exponential of a constructive real.  Private.
-// Uses a Taylor series expansion.  Assumes x < 1/2.
+// Uses a Taylor series expansion.  Assumes abs(x) < 1/2.
 // Note: this is known to be a bad algorithm for
 // floating point.  Unfortunately, other alternatives
 // appear to require precomputed information.
+// At high precision, we instead use the "bit-burst" algorithm:
+// The argument is split into pieces r_j = m_j/2**e_j, where
+// e_j roughly doubles with j, and m_j has about e_j/2 bits.  Exp(r_j)
+// is computed from the Taylor series by binary splitting, with
+// numbers of about the final size, since the terms shrink by a factor
+// of 2**(e_j/2) or so each.  The results are multiplied together.
 class prescaled_exp_CR extends CR {
     CR op;
     prescaled_exp_CR(CR x) { op = x; }
+    // Approximations to at least this many bits use the bit-burst
+    // algorithm.
+    static final int bit_burst_min_bits = 1000;
+    // The number of bits in the first piece of the argument.
+    static final int first_piece_bits = 8;
+
+    // exp(m/2**e), divided by 2**prec and truncated, with an error < 2.
+    // Assumes abs(m/2**e) < 1/2.  The number of terms depends on the
+    // size of m, which for all but the first piece of the argument is
+    // about half that of 2**e.
+    static BigInteger exp_piece(final BigInteger m, final int e, int prec) {
+	// The terms (m/2**e)**k/k! decrease by a factor of at least 2.
+	// Take enough of them that the next, and hence the tail, is
+	// < 1/2 ulp.
+	int log_z = m.bitLength() - e;	// abs(m/2**e) < 2**log_z
+	if (log_z > -1) log_z = -1;
+	int terms_needed = 1;
+	double log_term = log_z;	// log2 of the bound on term 1.
+	while (log_term > prec - 2) {
+	    ++terms_needed;
+	    log_term += log_z - Math.log(terms_needed)/Math.log(2.0);
+	}
+	// Term k is (m/2**e)**k/k!.  Term 0 is 2**e/(1 * 2**e).
+	binary_split_series series = new binary_split_series() {
+	    BigInteger a(int k) { return big1; }
+	    BigInteger p(int k) { return k == 0? big1.shiftLeft(e) : m; }
+	    BigInteger q(int k) { return k == 0? big1 : BigInteger.valueOf(k); }
+	};
+	series.q_shift = e;
+	return series.fixed_sum(terms_needed, prec);
+    }
+
+    BigInteger bit_burst_approximate(int p) {
+	int op_prec = p - 3;
+	BigInteger op_appr = op.get_appr(op_prec);
+	  // Error in argument results in error of < 1/4 ulp.
+	boolean negative = (op_appr.signum() < 0);
+	BigInteger abs_appr = op_appr.abs();
+	int frac_bits = -op_prec;
+	int pieces = 1;
+	for (int e = first_piece_bits; e < frac_bits; e *= 2) ++pieces;
+	  // Each piece contributes an error < 2 to its factor,
+	  // and its multiplication another 1.  The partial products
+	  // and the remaining factors are bounded by exp(1/2), so
+	  // the total is < (2 exp(1/2) + 1) exp(1/2) < 8 per piece
+	  // at calc_precision, or < 1/16 ulp.  The final rounding adds
+	  // another 1/2 ulp.
+	int calc_precision = p - bound_log2(pieces) - 7;
+	BigInteger result = big1.shiftLeft(-calc_precision);
+	int prev_e = 0;
+	BigInteger prev_bits = big0;
+	for (int e = first_piece_bits; ; e *= 2) {
+	    check_abort(-calc_precision);
+	    if (e > frac_bits) e = frac_bits;
+	    BigInteger bits = abs_appr.shiftRight(frac_bits - e);
+	    BigInteger m = bits.subtract(prev_bits.shiftLeft(e - prev_e));
+	    if (m.signum() != 0) {
+		BigInteger factor = exp_piece(negative? m.negate() : m,
+					      e, calc_precision);
+		result = result.multiply(factor).shiftRight(-calc_precision);
+	    }
+	    if (e == frac_bits) break;
+	    prev_e = e;
+	    prev_bits = bits;
+	}
+	return scale(result, calc_precision - p);
+    }
+
     protected BigInteger approximate(int p) {
 	if (p >= 1) return big0;
-	int iterations_needed = -p/2 + 2;  // conservative estimate > 0.
+	if (-p >= bit_burst_min_bits) return bit_burst_approximate(p);
+	int iterations_needed = -p/2 + 4;  // conservative estimate > 0.
 	  //  Claim: each intermediate term is accurate
 	  //  to 2*2^calc_precision.
 	  //  Total rounding error in series computation is
@@ -1013,10 +2708,29 @@ class prescaled_exp_CR extends CR {
 	BigInteger current_term = scaled_1;
 	BigInteger current_sum = scaled_1;
 	int n = 0;
+	if (fixed_accumulator.enabled
+	    && fixed_accumulator.has_short_significand(op_appr)) {
+	    // op_appr = m * 2**low_bit, with m small.  The same loop, with
+	    // the same rounding, but performed in place.
+	    int low_bit = op_appr.getLowestSetBit();
+	    int m = op_appr.shiftRight(low_bit).intValue();
+	    int term_shift = -(op_prec + low_bit);	// > 1, since abs(op) < 1/2
+	    fixed_accumulator term = new fixed_accumulator(scaled_1);
+	    fixed_accumulator sum = new fixed_accumulator(scaled_1);
+	    while (term.bit_length() > p - 4 - calc_precision) {
+		check_abort(-calc_precision);
+		n += 1;
+		term.multiply_small(m);
+		term.shift_right_rounded(term_shift);
+		term.divide_small(n);
+		sum.add(term);
+	    }
+	    return scale(sum.to_BigInteger(), calc_precision - p);
+	}
 	BigInteger max_trunc_error =
 		big1.shiftLeft(p - 4 - calc_precision);
 	while (current_term.abs().compareTo(max_trunc_error) >= 0) {
-	  if (Thread.interrupted() || please_stop) throw new AbortedError();
+	  check_abort(-calc_precision);
 	  n += 1;
 	  /* current_term = current_term * op / n */
 	  current_term = scale(current_term.multiply(op_appr), op_prec);
@@ -1025,96 +2739,584 @@ class prescaled_exp_CR extends CR {
 	}
     	return scale(current_sum, calc_precision - p);
     }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.multiply(this);
+    }
 }
 
-// Representation of the cosine of a constructive real.  Private.
-// Uses a Taylor series expansion.  Assumes |x| < 1.
-class prescaled_cos_CR extends slow_CR {
+// exp(op), where op < -max_exp_shift ln(2), so that exp(op) is less
+// than 2**p for any precision p that check_prec allows.  Private.
+class exp_underflow_CR extends CR {
     CR op;
-    prescaled_cos_CR(CR x) {
-	op = x;
+    exp_underflow_CR(CR x) { op = x; }
+    protected BigInteger approximate(int p) {
+	return big0;
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.multiply(this);
+    }
+}
+
+// The sine and cosine of a constructive real, computed together.
+// Private.  Shared by the sin_cos_CR nodes representing each of them.
+// We subtract the nearest multiple k of PI/2, computed from integer
+// approximations to x and to PI/2, whose approximations are cached
+// by half_pi and so are computed only once for many arguments.
+// This leaves abs(r) < 0.8.  Sin(r) is then summed by its Taylor
+// series, or, at high precision, by the same "bit-burst" scheme as
+// in prescaled_exp_CR, i.e. by binary splitting for each piece of r,
+// and combining the pieces with the addition formulas.
+// Cos(r) is computed from sin(r) by a square root, which loses little,
+// since cos(r) > 0.69.  The results for r are then permuted and negated
+// according to k mod 4.
+class sin_cos_pair {
+    final CR op;
+    sin_cos_pair(CR x) { op = x; }
+    // Approximations to at least this many bits use the bit-burst
+    // algorithm.
+    static final int bit_burst_min_bits = 1000;
+    // The number of bits in the first piece of the argument.
+    static final int first_piece_bits = 8;
+
+    // Approximations to sin and cos at the same precision.
+    // Immutable, since other threads may evaluate this pair.
+    static final class sin_cos_appr {
+	final int prec;
+	final BigInteger sin;
+	final BigInteger cos;
+	sin_cos_appr(int prec, BigInteger sin, BigInteger cos) {
+	    this.prec = prec;
+	    this.sin = sin;
+	    this.cos = cos;
+	}
+    }
+    volatile sin_cos_appr cache;
+	// Null if there is no approximation yet.  Replaced only by
+	// a more precise approximation, via cache_updater.
+    private static final
+      AtomicReferenceFieldUpdater<sin_cos_pair, sin_cos_appr> cache_updater =
+	AtomicReferenceFieldUpdater.newUpdater(sin_cos_pair.class,
+					       sin_cos_appr.class, "cache");
+
+    // Record a as the cached approximations, unless another thread
+    // has already recorded more precise ones.
+    void update_cache(sin_cos_appr a) {
+	for (;;) {
+	    sin_cos_appr old_cache = cache;
+	    if (old_cache != null && old_cache.prec <= a.prec) return;
+	    if (cache_updater.compareAndSet(this, old_cache, a)) return;
+	}
+    }
+
+    // { sin(op), cos(op) }, each divided by 2**p and with an error < 1.
+    BigInteger[] get_apprs(int p) {
+	sin_cos_appr previous = cache;
+	if (previous == null || previous.prec > p) {
+	    previous = evaluate(p);
+	    update_cache(previous);
+	}
+	return new BigInteger[] { CR.scale(previous.sin, previous.prec - p),
+				  CR.scale(previous.cos, previous.prec - p) };
+    }
+
+    // sqrt(1 - s**2) for s at precision prec, prec < 0, with an error
+    // < 1.5 + abs(s)/sqrt(1 - s**2) times the error in s.
+    static BigInteger cos_from_sin(BigInteger s, int prec) {
+	BigInteger one_minus_square =
+		CR.big1.shiftLeft(-2 * prec).subtract(s.multiply(s));
+	if (one_minus_square.signum() <= 0) return CR.big0;
+	return sqrt_CR.fixed_sqrt(one_minus_square);
+    }
+
+    // sin(m/2**e), divided by 2**prec and truncated, with an error < 1.5.
+    // Assumes abs(m/2**e) < 1.
+    static BigInteger sin_piece(final BigInteger m, final int e, int prec) {
+	// The terms alternate in sign and decrease, so the tail is less
+	// than the first omitted term.  Make that < 1/2 ulp.
+	int log_z = m.bitLength() - e;	// abs(m/2**e) < 2**log_z
+	int terms_needed = 1;
+	double log_term = log_z;	// log2 of the bound on term 0.
+	while (log_term > prec - 1) {
+	    log_term += 2 * log_z - Math.log((2.0 * terms_needed)
+					     * (2 * terms_needed + 1))
+				    / Math.log(2.0);
+	    ++terms_needed;
+	}
+	// Term k is (-1)**k (m/2**e)**(2k+1)/(2k+1)!.  All q(k) implicitly
+	// include a factor 2**(2e).
+	final BigInteger minus_m_squared = m.multiply(m).negate();
+	binary_split_series series = new binary_split_series() {
+	    BigInteger a(int k) { return CR.big1; }
+	    BigInteger p(int k) {
+		return k == 0? m.shiftLeft(e) : minus_m_squared;
+	    }
+	    BigInteger q(int k) {
+		return k == 0? CR.big1
+			     : BigInteger.valueOf(2*(long)k * (2*k + 1));
+	    }
+	};
+	series.q_shift = 2 * e;
+	return series.fixed_sum(terms_needed, prec);
+    }
+
+    // { sin(r), cos(r) } at calc_precision, with r given by
+    // r_appr at calc_precision, abs(r) < 0.8.  The errors are < 8 per
+    // piece in the bit-burst case, with pieces as in bit_burst_pieces.
+    static BigInteger[] bit_burst_sin_cos(BigInteger r_appr,
+					  int calc_precision) {
+	boolean negative = (r_appr.signum() < 0);
+	BigInteger abs_appr = r_appr.abs();
+	int frac_bits = -calc_precision;
+	BigInteger sin = CR.big0;
+	BigInteger cos = CR.big1.shiftLeft(frac_bits);
+	int prev_e = 0;
+	BigInteger prev_bits = CR.big0;
+	for (int e = first_piece_bits; ; e *= 2) {
+	    CR.check_abort(frac_bits);
+	    if (e > frac_bits) e = frac_bits;
+	    BigInteger bits = abs_appr.shiftRight(frac_bits - e);
+	    BigInteger m = bits.subtract(prev_bits.shiftLeft(e - prev_e));
+	    if (m.signum() != 0) {
+		// Each factor is off by < 1.5 in sin, and
+		// < 1.5 + 1.5 * 1.03 in cos, i.e. < 4.5 in all.
+		// Rotating by it adds < 4.5 to the error, plus
+		// < 1.5 from truncation.  The rotations don't increase
+		// existing errors much, so < 8 per piece.
+		BigInteger s = sin_piece(m, e, calc_precision);
+		BigInteger c = cos_from_sin(s, calc_precision);
+		BigInteger new_sin = sin.multiply(c).add(cos.multiply(s))
+					.shiftRight(frac_bits);
+		cos = cos.multiply(c).subtract(sin.multiply(s))
+			 .shiftRight(frac_bits);
+		sin = new_sin;
+	    }
+	    if (e == frac_bits) break;
+	    prev_e = e;
+	    prev_bits = bits;
+	}
+	return new BigInteger[] { negative? sin.negate() : sin, cos };
+    }
+
+    static int bit_burst_pieces(int frac_bits) {
+	int pieces = 1;
+	for (int e = first_piece_bits; e < frac_bits; e *= 2) ++pieces;
+	return pieces;
+    }
+
+    sin_cos_appr evaluate(int p) {
+	int op_prec = p - 3;
+	BigInteger op_appr = op.get_appr(op_prec);
+	  // Error in argument results in error of < 1/8 ulp.
+	int calc_precision;
+	boolean bit_burst = (-p >= bit_burst_min_bits);
+	int iterations_needed = -p/2 + 4;  // conservative estimate > 0.
+	  // Below the bit-burst threshold, we halve r this many times,
+	  // which makes each term more than 2*halvings bits smaller,
+	  // and then use the double angle formulas.
+	int halvings = (int)Math.sqrt(-p/4.0);
+	if (bit_burst) {
+	    // The number of pieces at calc_precision, which is within
+	    // 32 bits of p.
+	    int pieces = bit_burst_pieces(-p + 32);
+	    calc_precision = p - CR.bound_log2(pieces) - 7;
+	      // Total error < 8 * pieces, or < 1/16 ulp.
+	} else {
+	    calc_precision = p - CR.bound_log2(2*iterations_needed) - 7
+			     - halvings;
+	      // Halving r, rounding in sin, and truncation contribute
+	      // < 2 * iterations_needed + 2, and cos twice that, i.e.
+	      // < 6 * iterations_needed + 4 in all.  Each doubling
+	      // doubles the error and adds 1, so the result is within
+	      // 2**halvings * (6 * iterations_needed + 5), or < 1/16 ulp.
+	}
+	// Reduce by k PI/2.  PI/2 is needed to k's length more bits.
+	int k_bits = Math.max(op_appr.bitLength() + op_prec, 0) + 1;
+	int half_pi_prec = p - k_bits - 5;
+	BigInteger half_pi_appr = CR.half_pi.get_appr(half_pi_prec);
+	BigInteger scaled_op = CR.scale(op_appr, op_prec - half_pi_prec);
+	BigInteger qr[] = scaled_op.add(half_pi_appr.shiftRight(1))
+				   .divideAndRemainder(half_pi_appr);
+	BigInteger k = qr[0];
+	if (qr[1].signum() < 0) k = k.subtract(CR.big1);
+	  // Error in k PI/2 < 2**(p - 5), or < 1/32 ulp.
+	  // abs(r) < PI/4 + 2**(p - 3), and the rounding of r adds < 1
+	  // at calc_precision.
+	BigInteger r_appr = CR.scale(scaled_op.subtract(
+					k.multiply(half_pi_appr)),
+				     half_pi_prec - calc_precision);
+	BigInteger sin, cos;
+	if (bit_burst) {
+	    BigInteger sc[] = bit_burst_sin_cos(r_appr, calc_precision);
+	    sin = sc[0];
+	    cos = sc[1];
+	} else {
+	    int frac_bits = -calc_precision;
+	    r_appr = CR.scale(r_appr, -halvings);
+	    BigInteger max_trunc_error = CR.big1;
+	    BigInteger r_squared = CR.scale(r_appr.multiply(r_appr),
+					    calc_precision);
+	    BigInteger current_term = r_appr;
+	    sin = current_term;
+	    int n = 1;
+	    while (current_term.abs().compareTo(max_trunc_error) >= 0) {
+	      CR.check_abort(frac_bits);
+	      n += 2;
+	      /* current_term = - current_term * r * r / n * (n - 1) */
+	      current_term = CR.scale(current_term.multiply(r_squared),
+				      calc_precision);
+	      current_term = current_term.divide(
+				BigInteger.valueOf(-n*(long)(n-1)));
+	      sin = sin.add(current_term);
+	    }
+	    cos = cos_from_sin(sin, calc_precision);
+	    for (int i = 0; i < halvings; ++i) {
+		BigInteger new_sin = sin.multiply(cos).shiftRight(frac_bits - 1);
+		cos = cos.multiply(cos).subtract(sin.multiply(sin))
+			 .shiftRight(frac_bits);
+		sin = new_sin;
+	    }
+	}
+	  // Final rounding error is <= 1/2 ulp.
+	  // Thus final error is < 1 ulp.
+	sin = CR.scale(sin, calc_precision - p);
+	cos = CR.scale(cos, calc_precision - p);
+	switch (k.intValue() & 3) {
+	    case 0: return new sin_cos_appr(p, sin, cos);
+	    case 1: return new sin_cos_appr(p, cos, sin.negate());
+	    case 2: return new sin_cos_appr(p, sin.negate(), cos.negate());
+	    default: return new sin_cos_appr(p, cos.negate(), sin);
+	}
+    }
+}
+
+// The sine or cosine of a constructive real.  Private.
+// Evaluated by a sin_cos_pair, which may be shared with a node for
+// the other function.
+class sin_cos_CR extends slow_CR {
+    final sin_cos_pair pair;
+    final boolean sine;
+    sin_cos_CR(sin_cos_pair p, boolean s) {
+	pair = p;
+	sine = s;
     }
     protected BigInteger approximate(int p) {
 	if (p >= 1) return big0;
-	int iterations_needed = -p/2 + 4;  // conservative estimate > 0.
-	  //  Claim: each intermediate term is accurate
-	  //  to 2*2^calc_precision.
-	  //  Total rounding error in series computation is
-	  //  2*iterations_needed*2^calc_precision,
-	  //  exclusive of error in op.
-	int calc_precision = p - bound_log2(2*iterations_needed)
-			       - 4; // for error in op, truncation.
-	int op_prec = p - 2;
+	return pair.get_apprs(p)[sine? 0 : 1];
+    }
+    CR[] derivative_operands() {
+	return new CR[] { pair.op };
+    }
+    // sin' = cos and cos' = -sin, with the other function taken from
+    // the same pair.
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = pair.op.derivative(var, memo);
+	if (d == null) return null;
+	CR result = d.multiply(new sin_cos_CR(pair, !sine));
+	return sine? result : result.negate();
+    }
+}
+
+// The arctangent of a constructive real.  Private.
+// We reduce abs(x) to w, 0 <= w <= 1/2, using
+//	atan(x) = PI/2 - atan(1/x)  and  atan(x) = PI/4 - atan((1-x)/(1+x)),
+// with PI/2 taken from the cached approximations of half_pi.
+// Atan(w) is then computed by the "bit-burst" scheme, as for
+// exp and sin: with R the leading bits of w,
+//	atan(w) = atan(R) + atan((w-R)/(1+wR)),
+// where the second argument is less than the rest of w.  Atan(R) is
+// summed by binary splitting, which is fast since R is short or
+// small.  Repeating this with R of doubling length uses up all of w
+// after O(log n) pieces.
+class atan_CR extends slow_CR {
+    CR op;
+    atan_CR(CR x) { op = x; }
+    // The number of bits in the first piece of the argument.
+    static final int first_piece_bits = 8;
+
+    // log2(abs(m/2**e)), rounded up, or close to it.
+    static double log2_bound(BigInteger m, int e) {
+	int len = m.bitLength();
+	if (len > 60) return len - e;
+	return Math.log(m.doubleValue() + 1)/Math.log(2.0) - e;
+    }
+
+    // atan(m/2**e), divided by 2**prec and truncated, with an
+    // error < 1.5.  Assumes 0 < m/2**e <= 1/2.
+    static BigInteger atan_piece(final BigInteger m, final int e,
+				 int prec) {
+	// The terms alternate in sign and decrease, so the tail is less
+	// than the first omitted term.  Make that < 1/2 ulp.
+	double log_z = log2_bound(m, e);
+	int terms_needed = 1;
+	double log_term = log_z;	// log2 of the bound on term 0.
+	while (log_term > prec - 1) {
+	    log_term += 2 * log_z;
+	    ++terms_needed;
+	}
+	// Term k is (-1)**k (m/2**e)**(2k+1)/(2k+1).  All q(k) implicitly
+	// include a factor 2**(2e).
+	final BigInteger minus_m_squared = m.multiply(m).negate();
+	binary_split_series series = new binary_split_series() {
+	    BigInteger a(int k) { return big1; }
+	    BigInteger p(int k) {
+		if (k == 0) return m.shiftLeft(e);
+		return minus_m_squared.multiply(BigInteger.valueOf(2*k - 1));
+	    }
+	    BigInteger q(int k) {
+		return k == 0? big1 : BigInteger.valueOf(2*k + 1);
+	    }
+	};
+	series.q_shift = 2 * e;
+	return series.fixed_sum(terms_needed, prec);
+    }
+
+    protected BigInteger approximate(int p) {
+	if (p >= 1) return big0;
+	int op_prec = p - 3;
 	BigInteger op_appr = op.get_appr(op_prec);
-	  // Error in argument results in error of < 1/4 ulp.
-	  // Cumulative arithmetic rounding error is < 1/16 ulp.
-	  // Series truncation error < 1/16 ulp.
+	  // Error in argument results in error of < 1/8 ulp.
+	int pieces = 1;
+	for (int e = first_piece_bits; e < -p + 32; e *= 2) ++pieces;
+	int calc_precision = p - bound_log2(pieces) - 7;
+	  // The reductions of x contribute < 2 at calc_precision,
+	  // and PI/4 another 2.  Each piece contributes < 1.5 from
+	  // the series and < 1 from the computation of the next
+	  // argument.  Atan has a derivative <= 1, so these
+	  // add up to < 4 + 2.5 * pieces, or < 1/16 ulp.
 	  // Final rounding error is <= 1/2 ulp.
 	  // Thus final error is < 1 ulp.
-	BigInteger current_term;
-	int n;
-	BigInteger max_trunc_error =
-		big1.shiftLeft(p - 4 - calc_precision);
-	n = 0;
-	current_term = big1.shiftLeft(-calc_precision);
-	BigInteger current_sum = current_term;
-	while (current_term.abs().compareTo(max_trunc_error) >= 0) {
-	  if (Thread.interrupted() || please_stop) throw new AbortedError();
-	  n += 2;
-	  /* current_term = - current_term * op * op / n * (n - 1)   */
-	  current_term = scale(current_term.multiply(op_appr), op_prec);
-	  current_term = scale(current_term.multiply(op_appr), op_prec);
-	  BigInteger divisor = BigInteger.valueOf(-n)
-				  .multiply(BigInteger.valueOf(n-1));
-	  current_term = current_term.divide(divisor);
-	  current_sum = current_sum.add(current_term);
+	int frac_bits = -calc_precision;
+	BigInteger one = big1.shiftLeft(frac_bits);
+	boolean negative = (op_appr.signum() < 0);
+	BigInteger abs_appr = op_appr.abs();
+	// atan(abs(x)) = quarters * PI/4 + (subtract? -1 : 1) * atan(w).
+	int quarters = 0;
+	boolean subtract = false;
+	BigInteger w;
+	if (abs_appr.compareTo(big1.shiftLeft(-op_prec)) > 0) {
+	    // abs(x) > 1.  Use 1/x.
+	    w = big1.shiftLeft(frac_bits - op_prec).divide(abs_appr);
+	    quarters = 2;
+	    subtract = true;
+	} else {
+	    w = scale(abs_appr, op_prec - calc_precision);
 	}
-    	return scale(current_sum, calc_precision - p);
+	if (w.compareTo(one.shiftRight(1)) > 0) {
+	    // w > 1/2.  Use (1-w)/(1+w), which is < 1/3.
+	    w = one.subtract(w).shiftLeft(frac_bits).divide(one.add(w));
+	    quarters += (subtract? -1 : 1);
+	    subtract = !subtract;
+	}
+	BigInteger sum = big0;
+	for (int e = first_piece_bits; w.signum() != 0; e *= 2) {
+	    check_abort(frac_bits);
+	    if (e > frac_bits) e = frac_bits;
+	    BigInteger m = w.shiftRight(frac_bits - e);
+	    if (m.signum() != 0) {
+		sum = sum.add(atan_piece(m, e, calc_precision));
+		BigInteger r = m.shiftLeft(frac_bits - e);
+		// w = (w - r)/(1 + w*r), both at calc_precision.
+		w = w.subtract(r).shiftLeft(2*frac_bits)
+		     .divide(one.shiftLeft(frac_bits).add(w.multiply(r)));
+	    }
+	}
+	BigInteger result = subtract? sum.negate() : sum;
+	if (quarters != 0) {
+	    BigInteger quarter_pi = half_pi.get_appr(calc_precision + 1);
+	    result = result.add(quarter_pi.multiply(
+					BigInteger.valueOf(quarters)));
+	}
+	if (negative) result = result.negate();
+	return scale(result, calc_precision - p);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.divide(one.add(op.multiply(op)));
+    }
+}
+
+// Binary splitting evaluation of series of the form
+//	sum_{n=0}^{N-1} a(n) * (p(0) * ... * p(n)) / (q(0) * ... * q(n))
+// where a, p, and q are integer valued, and q is positive.
+// For the terms from n1 to n2-1 we compute P = p(n1)...p(n2-1),
+// Q = q(n1)...q(n2-1), and T such that T/Q is the partial sum divided
+// by p(0)...p(n1-1)/(q(0)...q(n1-1)).  Splitting the range in half gives
+//	P = P1 * P2, Q = Q1 * Q2, T = T1 * Q2 + P1 * T2.
+// The operands of each multiplication are of roughly equal size, so
+// evaluating n bits costs O(M(n) log(n)**2), instead of the quadratic
+// or worse cost of evaluating term by term at full precision.
+abstract class binary_split_series {
+    abstract BigInteger a(int n);
+    abstract BigInteger p(int n);
+    abstract BigInteger q(int n);
+    // Each q(n) is implicitly multiplied by 2**q_shift.  This avoids
+    // multiplying by powers of two explicitly.
+    int q_shift = 0;
+
+    // Returns { P, Q, T } for the terms n1 through n2-1, except that
+    // Q omits the factor 2**(q_shift * (n2 - n1)).
+    BigInteger[] split(int n1, int n2) {
+	if (n2 - n1 == 1) {
+	    BigInteger p = p(n1);
+	    return new BigInteger[] { p, q(n1), a(n1).multiply(p) };
+	}
+	int m = (n1 + n2) >>> 1;
+	BigInteger left[] = split(n1, m);
+	BigInteger right[] = split(m, n2);
+	// The products grow to about the size of the final sum, or
+	// larger if its terms have large common factors.
+	CR.check_abort(left[2].bitLength() + right[1].bitLength());
+	return new BigInteger[] {
+	    left[0].multiply(right[0]),
+	    left[1].multiply(right[1]),
+	    left[2].multiply(right[1]).shiftLeft(q_shift * (n2 - m))
+		   .add(left[0].multiply(right[2]))
+	};
+    }
+
+    // The sum of the first n > 0 terms, divided by 2**prec and
+    // rounded toward minus infinity.
+    BigInteger fixed_sum(int n, int prec) {
+	BigInteger pqt[] = split(0, n);
+	CR.check_abort(pqt[2].bitLength() - prec - q_shift * n);
+	BigInteger qr[] = CR.shift(pqt[2], -prec - q_shift * n)
+			    .divideAndRemainder(pqt[1]);
+	if (qr[1].signum() < 0) return qr[0].subtract(CR.big1);
+	return qr[0];
     }
 }
 
 // The constructive real atan(1/n), where n is a small integer
 // > base.
-// This gives a simple and moderately fast way to compute PI.
+// Uses Euler's series
+//	atan(1/n) = sum_k 2**(2k) (k!)**2/(2k+1)! * n/(n**2 + 1)**(k+1),
+// evaluated by binary splitting.  The terms are positive, and
+// each is less than 1/(n**2 + 1) times its predecessor.
 class integral_atan_CR extends slow_CR {
     int op;
     integral_atan_CR(int x) { op = x; }
     protected BigInteger approximate(int p) {
 	if (p >= 1) return big0;
-	int iterations_needed = -p/2 + 2;  // conservative estimate > 0.
-	  //  Claim: each intermediate term is accurate
-	  //  to 2*base^calc_precision.
-	  //  Total rounding error in series computation is
-	  //  2*iterations_needed*base^calc_precision,
-	  //  exclusive of error in op.
-	int calc_precision = p - bound_log2(2*iterations_needed)
-			       - 2; // for error in op, truncation.
-	  // Error in argument results in error of < 3/8 ulp.
-	  // Cumulative arithmetic rounding error is < 1/4 ulp.
+	final BigInteger big_op = BigInteger.valueOf(op);
+	final BigInteger op_squared_plus_1 =
+		BigInteger.valueOf((long)op * op + 1);
+	binary_split_series series = new binary_split_series() {
+	    BigInteger a(int k) { return big_op; }
+	    BigInteger p(int k) {
+		return k == 0? big1 : BigInteger.valueOf(2*(long)k);
+	    }
+	    BigInteger q(int k) {
+		if (k == 0) return op_squared_plus_1;
+		return BigInteger.valueOf(2*(long)k + 1)
+				 .multiply(op_squared_plus_1);
+	    }
+	};
+	// The sum of the terms after the first n is less than
+	// (n**2 + 1)**-n.  We need that to be < 1/4 ulp.
+	int log_ratio = op_squared_plus_1.bitLength() - 1;
+	int terms_needed = (2 - p)/log_ratio + 1;
 	  // Series truncation error < 1/4 ulp.
+	  // Rounding error in fixed_sum is < 1/4 ulp.
 	  // Final rounding error is <= 1/2 ulp.
 	  // Thus final error is < 1 ulp.
- 	BigInteger scaled_1 = big1.shiftLeft(-calc_precision);
-        BigInteger big_op = BigInteger.valueOf(op);
-        BigInteger big_op_squared = BigInteger.valueOf(op*op);
-	BigInteger op_inverse = scaled_1.divide(big_op);
-	BigInteger current_power = op_inverse;
-	BigInteger current_term = op_inverse;
-	BigInteger current_sum = op_inverse;
-	int current_sign = 1;
-	int n = 1;
-	BigInteger max_trunc_error =
-		big1.shiftLeft(p - 2 - calc_precision);
-	while (current_term.abs().compareTo(max_trunc_error) >= 0) {
-	  if (Thread.interrupted() || please_stop) throw new AbortedError();
-	  n += 2;
-	  current_power = current_power.divide(big_op_squared);
-	  current_sign = -current_sign;
-	  current_term =
-	    current_power.divide(BigInteger.valueOf(current_sign*n));
-          current_sum = current_sum.add(current_term);
+	return scale(series.fixed_sum(terms_needed, p - 2), -2);
+    }
+    CR[] derivative_operands() {
+	return new CR[0];
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return null;
+    }
+}
+
+// The constructive real atanh(1/n), where n is a small integer > 1.
+// Uses the series
+//	atanh(1/n) = sum_k 1/((2k+1) n**(2k+1)),
+// evaluated by binary splitting.  Each term is less than 1/n**2
+// times its predecessor.  Used for ln(2).
+class integral_atanh_CR extends slow_CR {
+    int op;
+    integral_atanh_CR(int x) { op = x; }
+    protected BigInteger approximate(int p) {
+	if (p >= 1) return big0;
+	final BigInteger big_op = BigInteger.valueOf(op);
+	final BigInteger op_squared = BigInteger.valueOf((long)op * op);
+	binary_split_series series = new binary_split_series() {
+	    BigInteger a(int k) { return big1; }
+	    BigInteger p(int k) {
+		return k == 0? big1 : BigInteger.valueOf(2*(long)k - 1);
+	    }
+	    BigInteger q(int k) {
+		if (k == 0) return big_op;
+		return BigInteger.valueOf(2*(long)k + 1).multiply(op_squared);
+	    }
+	};
+	// The sum of the terms after the first n is less than
+	// 2 * op**-(2n+1).  We need that to be < 1/4 ulp.
+	int log_op = big_op.bitLength() - 1;
+	int terms_needed = (3 - p)/(2 * log_op) + 1;
+	  // Series truncation error < 1/4 ulp.
+	  // Rounding error in fixed_sum is < 1/4 ulp.
+	  // Final rounding error is <= 1/2 ulp.
+	  // Thus final error is < 1 ulp.
+	return scale(series.fixed_sum(terms_needed, p - 2), -2);
+    }
+    CR[] derivative_operands() {
+	return new CR[0];
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return null;
+    }
+}
+
+// Chudnovsky's series
+//	sum_k (-1)**k (6k)! (13591409 + 545140134k)/((3k)! (k!)**3 640320**3k),
+// which is 426880 sqrt(10005)/PI.  Each term contributes more than 47
+// bits.  Evaluated by binary splitting.  Used for PI.
+class chudnovsky_CR extends slow_CR {
+    static final BigInteger big_a = BigInteger.valueOf(13591409);
+    static final BigInteger big_b = BigInteger.valueOf(545140134);
+    static final BigInteger c_cubed_over_24 =
+		BigInteger.valueOf(640320).pow(3).divide(BigInteger.valueOf(24));
+    static final binary_split_series series = new binary_split_series() {
+	BigInteger a(int k) {
+	    return big_a.add(big_b.multiply(BigInteger.valueOf(k)));
 	}
-    	return scale(current_sum, calc_precision - p);
+	BigInteger p(int k) {
+	    if (k == 0) return big1;
+	    long k6 = 6*(long)k;
+	    return BigInteger.valueOf(-(k6 - 5)).multiply(
+			BigInteger.valueOf((2*(long)k - 1) * (k6 - 1)));
+	}
+	BigInteger q(int k) {
+	    if (k == 0) return big1;
+	    return BigInteger.valueOf(k).pow(3).multiply(c_cubed_over_24);
+	}
+    };
+    protected BigInteger approximate(int p) {
+	// The terms alternate in sign, and the nth has absolute value
+	// < 2**30 (n+1) 2**(-47n).  Thus the sum of the terms
+	// after the first n is < 1/4 ulp if 47n >= 64 - p.
+	int terms_needed = (64 - p)/47 + 1;
+	  // Error analysis as for integral_atan_CR.
+	return scale(series.fixed_sum(terms_needed, p - 2), -2);
+    }
+    CR[] derivative_operands() {
+	return new CR[0];
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	return null;
     }
 }
 
@@ -1148,10 +3350,35 @@ class prescaled_ln_CR extends slow_CR {
 	BigInteger current_sum = current_term;
 	int n = 1;
 	int current_sign = 1;	// (-1)^(n-1)
+	if (fixed_accumulator.enabled
+	    && fixed_accumulator.has_short_significand(op_appr)) {
+	    // As in prescaled_exp_CR.
+	    int low_bit = op_appr.getLowestSetBit();
+	    int m = op_appr.shiftRight(low_bit).intValue();
+	    int term_shift = -(op_prec + low_bit);
+	    fixed_accumulator power = new fixed_accumulator(x_nth);
+	    fixed_accumulator term = new fixed_accumulator(x_nth);
+	    fixed_accumulator sum = new fixed_accumulator(x_nth);
+	    while (term.bit_length() > p - 4 - calc_precision) {
+		check_abort(-calc_precision);
+		n += 1;
+		current_sign = -current_sign;
+		power.multiply_small(m);
+		power.shift_right_rounded(term_shift);
+		term.set(power);
+		term.divide_small(n);
+		if (current_sign > 0) {
+		    sum.add(term);
+		} else {
+		    sum.subtract(term);
+		}
+	    }
+	    return scale(sum.to_BigInteger(), calc_precision - p);
+	}
 	BigInteger max_trunc_error =
 		big1.shiftLeft(p - 4 - calc_precision);
 	while (current_term.abs().compareTo(max_trunc_error) >= 0) {
-	  if (Thread.interrupted() || please_stop) throw new AbortedError();
+	  check_abort(-calc_precision);
 	  n += 1;
           current_sign = -current_sign;
 	  x_nth = scale(x_nth.multiply(op_appr), op_prec);
@@ -1161,15 +3388,213 @@ class prescaled_ln_CR extends slow_CR {
 	}
     	return scale(current_sum, calc_precision - p);
     }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.divide(one.add(op));
+    }
+}
+
+// The natural logarithm of a constructive real x, 7/16 < x < 25/16.
+// Private.  Below agm_ln_threshold bits, this is just prescaled_ln_CR
+// applied to x - 1.  Above, we use
+//	ln(s) = PI/(2 AGM(1, 4/s)) + e,  abs(e) < 4(8 + ln(s))/s**2,
+// for s = x * 2**m, with m chosen so that e is negligible, and
+// subtract m ln(2).  This needs O(log n) square roots and
+// multiplications at n bits, where the series needs O(n) terms.
+// The AGM is computed in fixed point with m extra bits, since
+// 4/s must be known to n bits relative precision.  The sensitivity
+// of the result to later, larger, terms is at most ln(s) times
+// their relative error, which is negligible.
+class agm_ln_CR extends slow_CR {
+    CR op;
+    CR series;
+    agm_ln_CR(CR x) {
+	op = x;
+	series = x.simple_ln();
+    }
+    protected BigInteger approximate(int p) {
+	int n = -p;
+	if (n < agm_ln_threshold) return series.get_appr(p);
+	int calc_precision = p - 4;
+	  // Error in x contributes < 1/16 ulp, since x > 7/16.
+	int op_prec = p - 6;
+	BigInteger op_appr = op.get_appr(op_prec);
+	if (op_appr.signum() <= 0) throw new ArithmeticException();
+	  // s = x * 2**m > 2**(m-2), so that e < 2**-(n+5), i.e.
+	  // < 1/32 ulp.
+	int log_n = bound_log2(n + 8);
+	int m = (n + log_n + 8)/2 + 3;
+	  // Fixed point with working_bits fraction bits.  Rounding
+	  // in each of the O(log n) steps contributes a relative error
+	  // < 2**(-working_bits + m + 2), or 2**(-n - log_n - 6) overall.
+	int working_bits = n + m + 2*log_n + 8;
+	BigInteger a = big1.shiftLeft(working_bits);
+	BigInteger b = big1.shiftLeft(working_bits + 2 - m - op_prec)
+			   .divide(op_appr);		// 4/s
+	while (a.subtract(b).compareTo(big8) > 0) {
+	    check_abort(working_bits);
+	    BigInteger next_a = a.add(b).shiftRight(1);
+	    b = sqrt_CR.fixed_sqrt(a.multiply(b));
+	    a = next_a;
+	}
+	  // The AGM is within 8 of a, i.e. has a relative error less
+	  // than that of the previous step.
+	  // PI and ln(2) each contribute < 1/16 ulp, and the division
+	  // and the scaling of m ln(2) < 1/8 ulp.  Final rounding adds
+	  // 1/2 ulp.
+	int pi_prec = calc_precision - log_n - 4;
+	BigInteger pi_appr = PI.get_appr(pi_prec);
+	BigInteger ln_s = pi_appr.shiftLeft(working_bits + pi_prec
+					    - calc_precision - 1)
+				 .divide(a);
+	int ln2_prec = calc_precision - bound_log2(m) - 4;
+	BigInteger m_ln2 = scale(ln2.get_appr(ln2_prec)
+				    .multiply(BigInteger.valueOf(m)),
+				 ln2_prec - calc_precision);
+	return scale(ln_s.subtract(m_ln2), calc_precision - p);
+    }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.divide(op);
+    }
 }
 
 class sqrt_CR extends CR {
     CR op;
     sqrt_CR(CR x) { op = x; }
-    final int fp_prec = 50;	// Conservative estimate of number of
-				// significant bits in double precision
-				// computation.
-    final int fp_op_prec = 60;
+    static final int fp_prec = 50; // Conservative estimate of number of
+				   // significant bits in double precision
+				   // computation.
+    static final int fp_op_prec = 60;
+    // An approximation to 2**k/sqrt(op), with relative error
+    // < 2**-good_bits, left over from the last evaluation.
+    // It is used to seed the next one, so that a refinement costs
+    // a few multiplications at the new precision, and no division.
+    // Immutable, since other threads may evaluate this node.
+    static final class inv_root_appr {
+	final BigInteger y;
+	final int k;
+	final int good_bits;
+	inv_root_appr(BigInteger y, int k, int good_bits) {
+	    this.y = y;
+	    this.k = k;
+	    this.good_bits = good_bits;
+	}
+    }
+    volatile inv_root_appr inv_root;
+
+    // Refine y, an approximation to 2**y_k[0]/sqrt(a), a > 0, with
+    // relative error < 2**-good_bits, until the relative error is
+    // < 2**-target_bits, by Newton iteration: y' = y + y(1 - a*y*y)/2.
+    // Updates y_k[0] to reflect the scaling of the result.
+    // As in inv_CR.newton_reciprocal, each step uses only as many bits
+    // of a and y as it needs.  Each step introduces an error < 1 in the
+    // last place from rounding, < 1/8 from truncating y and the error
+    // term, < 0.4 from the quadratic term, and a relative error
+    // < 2**-(step_bits + 7) from truncating a.  Since the result
+    // exceeds 2**(step_bits + 1), its relative error is < 2**-step_bits.
+    static BigInteger newton_inv_sqrt(BigInteger a, BigInteger y, int y_k[],
+				      int good_bits, int target_bits) {
+	int a_len = a.bitLength();
+	int half_len = (a_len - 1)/2;	// sqrt(a) >= 2**half_len
+	while (good_bits < target_bits) {
+	    int step_bits = 2*good_bits - 4;
+	    if (step_bits > target_bits) step_bits = target_bits;
+	    check_abort(step_bits);
+	    int step_k = step_bits + 2 + half_len;
+	    // Use only about step_bits + 8 bits of a.  The shift must
+	    // be even, so that it corresponds to a shift of the square root.
+	    int a_trunc = (a_len - step_bits - 8)/2;
+	    if (a_trunc < 0) a_trunc = 0;
+	    BigInteger trunc_a = a.shiftRight(2*a_trunc);
+	    int trunc_k = step_k - a_trunc;
+	    BigInteger y0 = shift(y, step_k - y_k[0]);
+	    BigInteger error = big1.shiftLeft(2*trunc_k)
+		.subtract(trunc_a.multiply(y0.multiply(y0)));
+		// |error| < 2**(2*trunc_k - good_bits + 2), and the
+		// correction y0 * error/2**(2*trunc_k + 1) is needed
+		// only to within 1/8.
+	    int y_trunc = good_bits - 4;
+	    if (y_trunc < 0) y_trunc = 0;
+	    int error_trunc = 2*trunc_k - step_bits - 6;
+	    if (error_trunc < 0) error_trunc = 0;
+	    BigInteger correction =
+		y0.shiftRight(y_trunc).multiply(error.shiftRight(error_trunc))
+		  .shiftRight(2*trunc_k + 1 - y_trunc - error_trunc);
+	    y = y0.add(correction);
+	    y_k[0] = step_k;
+	    good_bits = step_bits;
+	}
+	return y;
+    }
+
+    // An approximation to sqrt(a), a > 0, with error < 1.5, given
+    // y, an approximation to 2**y_k/sqrt(a) with relative error
+    // < 2**-good_bits, where 2*good_bits >= a.bitLength()/2 + 5.
+    // Uses the Karp-Markstein step x = x0 + y(a - x0*x0)/2, where x0 is
+    // a*y, computed to about good_bits bits.  With x0 = sqrt(a)(1 + e),
+    // the error in x is about sqrt(a)(e*e/2 + e*(relative error in y)),
+    // which is < 1/4.  Rounding contributes < 1, and truncating y
+    // and a - x0*x0 another 1/8.
+    static BigInteger sqrt_from_inv_sqrt(BigInteger a, BigInteger y, int y_k,
+					 int good_bits) {
+	int a_len = a.bitLength();
+	int a_trunc = (a_len - good_bits - 8)/2;
+	if (a_trunc < 0) a_trunc = 0;
+	int y_trunc = y.bitLength() - good_bits - 8;
+	if (y_trunc < 0) y_trunc = 0;
+	BigInteger x0 = shift(a.shiftRight(2*a_trunc)
+			       .multiply(y.shiftRight(y_trunc)),
+			      2*a_trunc + y_trunc - y_k);
+	BigInteger remainder = a.subtract(x0.multiply(x0));
+	    // The correction is < 2**(a_len/2 - good_bits + 2), and is
+	    // needed only to within 1/8.  Keep correction_bits + 5
+	    // bits of each factor.
+	int correction_bits = (a_len + 1)/2 - good_bits + 2;
+	int y_drop = y.bitLength() - correction_bits - 5;
+	if (y_drop < 0) y_drop = 0;
+	int remainder_drop = remainder.bitLength() - correction_bits - 5;
+	if (remainder_drop < 0) remainder_drop = 0;
+	BigInteger correction = shift(y.shiftRight(y_drop)
+				       .multiply(remainder.shiftRight(
+							remainder_drop)),
+				      y_drop + remainder_drop - y_k - 1);
+	return x0.add(correction);
+    }
+
+    // A double precision approximation to 2**y_k[0]/sqrt(a), a > 0,
+    // with relative error < 2**-(fp_prec - 4).  Sets y_k[0].
+    static BigInteger inv_sqrt_seed(BigInteger a, int y_k[]) {
+      // Use the inverse square root of the leading (even) bits.
+	int a_len = a.bitLength();
+	int a_trunc = (a_len - fp_op_prec)/2;
+	if (a_trunc < 0) a_trunc = 0;
+	double leading = a.shiftRight(2*a_trunc).doubleValue();
+	int leading_half_len = (a_len - 2*a_trunc + 1)/2;
+	double inv_sqrt = Math.scalb(1.0/Math.sqrt(leading),
+				     fp_prec + leading_half_len);
+	y_k[0] = fp_prec + leading_half_len + a_trunc;
+	return BigInteger.valueOf((long)inv_sqrt);
+    }
+
+    // An approximation to sqrt(a), a > 0, with error < 1.5,
+    // computed without any previous information.
+    static BigInteger fixed_sqrt(BigInteger a) {
+	int target_bits = ((a.bitLength() + 1)/2 + 6)/2 + 1;
+	int y_k[] = new int[1];
+	BigInteger y = inv_sqrt_seed(a, y_k);
+	int good_bits = fp_prec - 4;
+	y = newton_inv_sqrt(a, y, y_k, good_bits, target_bits);
+	return sqrt_from_inv_sqrt(a, y, y_k[0],
+				  Math.max(good_bits, target_bits));
+    }
+
     protected BigInteger approximate(int p) {
 	int max_prec_needed = 2*p - 1;
 	int msd = op.msd(max_prec_needed);
@@ -1177,22 +3602,42 @@ class sqrt_CR extends CR {
 	int result_msd = msd/2;			// +- 1
         int result_digits = result_msd - p; 	// +- 2
 	if (result_digits > fp_prec) {
-	  // Compute less precise approximation and use a Newton iter.
-	    int appr_digits = result_digits/2 + 6;
-		// This should be conservative.  Is fewer enough?
-	    int appr_prec = result_msd - appr_digits;
-	    BigInteger last_appr = get_appr(appr_prec);
-	    int prod_prec = 2*appr_prec;
-	    BigInteger op_appr = op.get_appr(prod_prec);
-		// Slightly fewer might be enough;
-	    // Compute (last_appr * last_appr + op_appr)/(last_appr/2)
-	    // while adjusting the scaling to make everything work
-	    BigInteger prod_prec_scaled_numerator =
-		last_appr.multiply(last_appr).add(op_appr);
-	    BigInteger scaled_numerator = 
-		scale(prod_prec_scaled_numerator, appr_prec - p);
-	    BigInteger shifted_result = scaled_numerator.divide(last_appr);
-	    return shifted_result.add(big1).shiftRight(1);
+	  // Compute the square root of an approximation to op * 2**(4-2p),
+	  // and divide by 4.  The square root is only half as sensitive
+	  // to relative errors, so op is needed only to about
+	  // msd/2 + p - 5 bits; we fill in the rest with zeros.
+	  // The approximation to op then contributes an error < 1/8 to
+	  // the square root, and sqrt_from_inv_sqrt < 1.5, so that the
+	  // result is accurate to < 1.7/4 + 1/2 ulp.
+	    int op_prec = ((msd >> 1) + p - 5) & ~1;
+	    if (op_prec < 2*p - 4) op_prec = 2*p - 4;
+	    BigInteger op_appr = op.get_appr(op_prec);
+	    if (op_appr.signum() <= 0) throw new ArithmeticException();
+	    op_appr = op_appr.shiftLeft(op_prec - 2*p + 4);
+	    int a_len = op_appr.bitLength();
+	    int target_bits = ((a_len + 1)/2 + 6)/2 + 1;
+	    BigInteger y;
+	    int y_k[] = new int[1];
+	    int good_bits;
+	    // The previous inverse square root approximates
+	    // 2**(k - p + 2)/sqrt(op_appr), except that op_appr
+	    // adds a relative error < 2**-(a_len - 1) to op, i.e.
+	    // < 2**-a_len to its square root.
+	    inv_root_appr previous = inv_root;
+	    if (previous != null && previous.good_bits >= 10) {
+		y = previous.y;
+		y_k[0] = previous.k - p + 2;
+		good_bits = Math.min(previous.good_bits, a_len) - 1;
+	    } else {
+		y = inv_sqrt_seed(op_appr, y_k);
+		good_bits = fp_prec - 4;
+	    }
+	    y = newton_inv_sqrt(op_appr, y, y_k, good_bits, target_bits);
+	    BigInteger result = sqrt_from_inv_sqrt(op_appr, y, y_k[0],
+						   target_bits);
+	    inv_root = new inv_root_appr(y, y_k[0] + p - 2,
+					 Math.min(target_bits, a_len) - 1);
+	    return scale(result, -2);
 	} else {
 	  // Use a double precision floating point approximation.
 	    // Make sure all precisions are even
@@ -1208,4 +3653,27 @@ class sqrt_CR extends CR {
 	    return shift(scaled_sqrt, shift_count);
 	}
     }
+    CR[] derivative_operands() {
+	return new CR[] { op };
+    }
+    CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	CR d = op.derivative(var, memo);
+	return d == null? null : d.divide(shiftLeft(1));
+    }
+    // Sqrt is increasing.  We use fixed_sqrt, with its error of < 1.5,
+    // for each end of the enclosure of op, clamped to 0 if necessary.
+    CR[] enclosure_operands() {
+	return new CR[] { op };
+    }
+    BigInteger[] enclosure(int p, BigInteger operand_enclosures[][]) {
+	BigInteger x[] = operand_enclosures[0];
+	if (p > 0 || x[1].signum() < 0) return super.enclosure(p, null);
+	BigInteger lo = big0;
+	if (x[0].signum() > 0) {
+	    lo = fixed_sqrt(x[0].shiftLeft(-p)).subtract(big2).max(big0);
+	}
+	BigInteger hi = big0;
+	if (x[1].signum() > 0) hi = fixed_sqrt(x[1].shiftLeft(-p)).add(big2);
+	return new BigInteger[] { lo, hi };
+    }
 }
@@ -0,0 +1,383 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.function.Supplier;
+
+/**
+* Builds constructive reals, returning the same object for the same
+* operation applied to the same operands.
+* For example, if <TT>f</tt> is a <TT>CRFactory</tt>,
+* <TT>f.exp(x) == f.exp(x)</tt>, whereas <TT>x.exp()</tt> builds a new
+* object for each call, with its own cached approximations.
+* Equal subexpressions built with the same factory are therefore
+* evaluated only once at each precision.
+* <P>
+* Operands are compared by identity, so sharing extends only to
+* expressions built from the same objects, e.g. those returned by
+* the factory.  Sums and products of two operands are also shared
+* with those of the same operands in the opposite order.
+* <TT>abs</tt>, <TT>max</tt>, <TT>min</tt>, <TT>subtract</tt> and
+* <TT>divide</tt> are built from the other operations of the factory,
+* so that, for example, <TT>f.abs(x)</tt> shares <TT>f.negate(x)</tt>.
+* <P>
+* The factory refers to the objects it returns, and to their
+* operands, only weakly, so it does not prevent their garbage
+* collection, even where the result of an operation is one of its
+* operands, e.g. <TT>f.shiftLeft(x, 0)</tt>.  A factory may be used
+* by several threads.
+*/
+public class CRFactory {
+    // An operation and its arguments.  CR and UnaryCRFunction
+    // arguments are compared by identity, others with equals.
+    // Keys in the table refer to the former through arg_refs, since
+    // the canonical node may be one of them, or reachable only from
+    // one of them, and would otherwise never be collected.
+    static final class node_key {
+	final String op;
+	Object args[];
+	final int hash;
+	node_key(String o, Object... a) {
+	    op = o;
+	    args = a;
+	    int h = o.hashCode();
+	    for (Object arg : a) h = 31 * h + arg_hash(arg);
+	    hash = h;
+	}
+	static boolean by_identity(Object x) {
+	    return x instanceof CR || x instanceof UnaryCRFunction;
+	}
+	static int arg_hash(Object x) {
+	    return by_identity(x)? System.identityHashCode(x) : x.hashCode();
+	}
+	// Argument i, or null if it was held weakly and has been
+	// collected.
+	Object arg(int i) {
+	    Object x = args[i];
+	    return x instanceof arg_ref? ((arg_ref)x).get() : x;
+	}
+	// Refer to the arguments compared by identity weakly, queuing
+	// the references in q.  Called before the key is put in the table.
+	// The array may be that passed to CR.sum or CR.product, so we
+	// replace it rather than modify it.
+	void weaken(ReferenceQueue<Object> q) {
+	    Object weak[] = new Object[args.length];
+	    for (int i = 0; i < args.length; ++i) {
+		weak[i] = by_identity(args[i])? new arg_ref(this, args[i], q)
+					      : args[i];
+	    }
+	    args = weak;
+	}
+	public int hashCode() {
+	    return hash;
+	}
+	public boolean equals(Object o) {
+	    if (!(o instanceof node_key)) return false;
+	    node_key k = (node_key)o;
+	    if (hash != k.hash || !op.equals(k.op)
+		|| args.length != k.args.length) {
+		return false;
+	    }
+	    for (int i = 0; i < args.length; ++i) {
+		Object x = arg(i);
+		Object y = k.arg(i);
+		if (x == null || y == null) return false;
+		if (x == y) continue;
+		if (by_identity(x) || !x.equals(y)) return false;
+	    }
+	    return true;
+	}
+    }
+
+    // A weak reference to a canonical node, which remembers its key,
+    // so that the table entry can be removed once the node is collected.
+    static final class node_ref extends WeakReference<CR> {
+	final node_key key;
+	node_ref(node_key k, CR x, ReferenceQueue<Object> q) {
+	    super(x, q);
+	    key = k;
+	}
+    }
+
+    // The same for an argument of a key, since the key can no longer
+    // be looked up once an argument is collected.
+    static final class arg_ref extends WeakReference<Object> {
+	final node_key key;
+	arg_ref(node_key k, Object x, ReferenceQueue<Object> q) {
+	    super(x, q);
+	    key = k;
+	}
+    }
+
+    private final HashMap<node_key, node_ref> table =
+	new HashMap<node_key, node_ref>();
+    private final ReferenceQueue<Object> collected =
+	new ReferenceQueue<Object>();
+
+/**
+* A factory without any constructive reals yet.
+*/
+    public CRFactory() {}
+
+    // Remove the entries for collected nodes.  Called with the
+    // lock held.
+    private void purge() {
+	Reference<?> r;
+	while ((r = collected.poll()) != null) {
+	    node_key key = r instanceof node_ref? ((node_ref)r).key
+						: ((arg_ref)r).key;
+	    // HashMap finds key by identity, even if it no longer
+	    // equals itself.  The entry may since have been replaced.
+	    node_ref entry = table.get(key);
+	    if (entry != null && entry.key == key) {
+		table.remove(key);
+	    }
+	}
+    }
+
+    // The number of entries.  For testing.
+    synchronized int size() {
+	purge();
+	return table.size();
+    }
+
+    private synchronized CR lookup(node_key key) {
+	purge();
+	node_ref r = table.get(key);
+	return r == null? null : r.get();
+    }
+
+    // Make x the canonical node for key, unless another thread has
+    // registered one in the meantime.  Returns the canonical node.
+    private synchronized CR register(node_key key, CR x) {
+	purge();
+	node_ref r = table.get(key);
+	if (r != null) {
+	    CR old = r.get();
+	    if (old != null) return old;
+	}
+	key.weaken(collected);
+	table.put(key, new node_ref(key, x, collected));
+	return x;
+    }
+
+    // The canonical sine and cosine for sin_key and cos_key, unless
+    // another thread has registered both in the meantime.  Otherwise
+    // register both halves of sin_cos, even if one of the old halves
+    // is still in use, so that the canonical nodes share one
+    // sin_cos_pair.  Returns the canonical nodes.
+    private synchronized CR[] register_pair(node_key sin_key,
+					    node_key cos_key, CR sin_cos[]) {
+	purge();
+	node_ref s = table.get(sin_key);
+	node_ref c = table.get(cos_key);
+	if (s != null && c != null) {
+	    CR sin = s.get();
+	    CR cos = c.get();
+	    if (sin != null && cos != null) return new CR[] { sin, cos };
+	}
+	sin_key.weaken(collected);
+	cos_key.weaken(collected);
+	table.put(sin_key, new node_ref(sin_key, sin_cos[0], collected));
+	table.put(cos_key, new node_ref(cos_key, sin_cos[1], collected));
+	return sin_cos;
+    }
+
+    // The canonical node for key, built by make if there is none.
+    // Make is called without the lock, since it may evaluate its
+    // operands, e.g. in exp and ln.
+    private CR intern(node_key key, Supplier<CR> make) {
+	CR x = lookup(key);
+	if (x != null) return x;
+	return register(key, make.get());
+    }
+
+    // Order the operands of a commutative operation.
+    private static node_key commutative_key(String op, CR x, CR y) {
+	if (System.identityHashCode(x) > System.identityHashCode(y)) {
+	    return new node_key(op, y, x);
+	}
+	return new node_key(op, x, y);
+    }
+
+/**
+* Equivalent to <TT>CR.valueOf(n)</tt>.
+*/
+    public CR valueOf(BigInteger n) {
+	return intern(new node_key("value", n), () -> CR.valueOf(n));
+    }
+
+/**
+* Equivalent to <TT>CR.valueOf(n)</tt>.
+*/
+    public CR valueOf(long n) {
+	return valueOf(BigInteger.valueOf(n));
+    }
+
+/**
+* Equivalent to <TT>x.add(y)</tt>.
+*/
+    public CR add(CR x, CR y) {
+	return intern(commutative_key("add", x, y), () -> x.add(y));
+    }
+
+/**
+* Equivalent to <TT>CR.sum(terms)</tt>.
+*/
+    public CR sum(CR... terms) {
+	final CR t[] = terms.clone();
+	return intern(new node_key("sum", (Object[])t), () -> CR.sum(t));
+    }
+
+/**
+* Equivalent to <TT>x.negate()</tt>.
+*/
+    public CR negate(CR x) {
+	return intern(new node_key("negate", x), () -> x.negate());
+    }
+
+/**
+* Equivalent to <TT>x.subtract(y)</tt>.
+*/
+    public CR subtract(CR x, CR y) {
+	return add(x, negate(y));
+    }
+
+/**
+* Equivalent to <TT>x.shiftLeft(n)</tt>.
+*/
+    public CR shiftLeft(CR x, int n) {
+	return intern(new node_key("shift", x, n), () -> x.shiftLeft(n));
+    }
+
+/**
+* Equivalent to <TT>x.shiftRight(n)</tt>.
+*/
+    public CR shiftRight(CR x, int n) {
+	CR.check_prec(n);
+	return shiftLeft(x, -n);
+    }
+
+/**
+* Equivalent to <TT>x.multiply(y)</tt>.
+*/
+    public CR multiply(CR x, CR y) {
+	return intern(commutative_key("multiply", x, y), () -> x.multiply(y));
+    }
+
+/**
+* Equivalent to <TT>CR.product(factors)</tt>.
+*/
+    public CR product(CR... factors) {
+	final CR f[] = factors.clone();
+	return intern(new node_key("product", (Object[])f),
+		      () -> CR.product(f));
+    }
+
+/**
+* Equivalent to <TT>x.inverse()</tt>.
+*/
+    public CR inverse(CR x) {
+	return intern(new node_key("inverse", x), () -> x.inverse());
+    }
+
+/**
+* Equivalent to <TT>x.divide(y)</tt>.
+*/
+    public CR divide(CR x, CR y) {
+	return multiply(x, inverse(y));
+    }
+
+/**
+* Equivalent to <TT>s.select(x, y)</tt>.
+*/
+    public CR select(CR s, CR x, CR y) {
+	return intern(new node_key("select", s, x, y), () -> s.select(x, y));
+    }
+
+/**
+* Equivalent to <TT>x.max(y)</tt>.
+*/
+    public CR max(CR x, CR y) {
+	return select(subtract(x, y), y, x);
+    }
+
+/**
+* Equivalent to <TT>x.min(y)</tt>.
+*/
+    public CR min(CR x, CR y) {
+	return select(subtract(x, y), x, y);
+    }
+
+/**
+* Equivalent to <TT>x.abs()</tt>.
+*/
+    public CR abs(CR x) {
+	return select(x, negate(x), x);
+    }
+
+/**
+* Equivalent to <TT>x.sqrt()</tt>.
+*/
+    public CR sqrt(CR x) {
+	return intern(new node_key("sqrt", x), () -> x.sqrt());
+    }
+
+/**
+* Equivalent to <TT>x.exp()</tt>.
+*/
+    public CR exp(CR x) {
+	return intern(new node_key("exp", x), () -> x.exp());
+    }
+
+/**
+* Equivalent to <TT>x.ln()</tt>.
+*/
+    public CR ln(CR x) {
+	return intern(new node_key("ln", x), () -> x.ln());
+    }
+
+/**
+* Equivalent to <TT>x.sinCos()</tt>.
+* The results are also those of <TT>sin(x)</tt> and <TT>cos(x)</tt>.
+*/
+    public CR[] sinCos(CR x) {
+	node_key sin_key = new node_key("sin", x);
+	node_key cos_key = new node_key("cos", x);
+	CR sin = lookup(sin_key);
+	CR cos = lookup(cos_key);
+	if (sin != null && cos != null) return new CR[] { sin, cos };
+	return register_pair(sin_key, cos_key, x.sinCos());
+    }
+
+/**
+* Equivalent to <TT>x.sin()</tt>.
+*/
+    public CR sin(CR x) {
+	return sinCos(x)[0];
+    }
+
+/**
+* Equivalent to <TT>x.cos()</tt>.
+*/
+    public CR cos(CR x) {
+	return sinCos(x)[1];
+    }
+
+/**
+* Equivalent to <TT>f.execute(x)</tt>.
+* <TT>f</tt> is compared by identity, so this is useful mainly for the
+* function objects defined by <TT>UnaryCRFunction</tt>, such as
+* <TT>UnaryCRFunction.atanFunction</tt>.
+*/
+    public CR apply(UnaryCRFunction f, CR x) {
+	return intern(new node_key("apply", f, x), () -> f.execute(x));
+    }
+}
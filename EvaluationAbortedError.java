@@ -0,0 +1,42 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+/**
+* Thrown when an evaluation exceeds one of the limits of its
+* <TT>EvaluationContext</tt>, or the context is cancelled.
+*/
+public class EvaluationAbortedError extends AbortedError {
+/**
+* The limit that was exceeded.
+*/
+    public enum Reason {
+	/** <TT>EvaluationContext.cancel</tt> was called. */
+	CANCELLED,
+	/** The timeout expired. */
+	DEADLINE,
+	/** A subexpression was needed to more than the maximum precision. */
+	PRECISION,
+	/** An approximation exceeded the maximum size. */
+	SIZE
+    }
+
+    private final Reason reason;
+
+    public EvaluationAbortedError(Reason r) {
+	reason = r;
+    }
+
+/**
+* Which limit caused the evaluation to be aborted.
+*/
+    public Reason getReason() {
+	return reason;
+    }
+
+    public String getMessage() {
+	return "evaluation aborted: " + reason;
+    }
+}
@@ -0,0 +1,139 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+* Limits on a single evaluation of a constructive real.
+* Unlike <TT>CR.please_stop</tt>, which stops all computations,
+* a context affects only the evaluations performed on its behalf:
+* <TT>x.get_appr(prec, context)</tt> computes the approximation
+* under the given limits, and throws
+* <TT>com.sgi.math.EvaluationAbortedError</tt> when one of them is exceeded.
+* Subexpression evaluations performed in <TT>CR.parallel_pool</tt>
+* on behalf of that call observe the same context.
+* <P>
+* The limits are checked periodically, e.g. once per term in
+* series evaluations, and whenever a subexpression is approximated.
+* A context may be shared by several evaluations, and may be cancelled
+* from any thread.
+*/
+public class EvaluationContext {
+    private volatile boolean cancelled = false;
+    private volatile long deadline;		// In System.nanoTime() units.
+    private volatile boolean has_deadline = false;
+    private volatile int max_precision = Integer.MAX_VALUE;
+    private volatile int max_bits = Integer.MAX_VALUE;
+
+    // The context for evaluations in the current thread, or null.
+    static final ThreadLocal<EvaluationContext> current =
+	new ThreadLocal<EvaluationContext>();
+
+/**
+* A context without limits.
+*/
+    public EvaluationContext() {}
+
+/**
+* Abort evaluations using this context once the given number
+* of milliseconds, counted from now, has elapsed.
+* Timeouts of more than about 146 years, such as
+* <TT>Long.MAX_VALUE</tt>, remove any earlier deadline.
+* @return this
+* @throws IllegalArgumentException if <TT>millis</tt> is negative
+*/
+    public EvaluationContext setTimeout(long millis) {
+	if (millis < 0) {
+	    throw new IllegalArgumentException("negative timeout " + millis);
+	}
+	// ToNanos saturates at Long.MAX_VALUE.  Deadlines are compared
+	// by the sign of a difference, which wraps for longer timeouts.
+	long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	if (nanos > max_timeout_nanos) {
+	    has_deadline = false;
+	    return this;
+	}
+	deadline = System.nanoTime() + nanos;
+	has_deadline = true;
+	return this;
+    }
+
+    // Longer timeouts are treated as no deadline at all.
+    static final long max_timeout_nanos = Long.MAX_VALUE / 2;
+
+/**
+* Abort evaluations using this context if any subexpression is needed
+* to more than <TT>bits</tt> bits to the right of the binary point.
+* Since subexpressions are generally evaluated with a few guard bits,
+* this should be somewhat larger than the precision requested
+* by the client.
+* @return this
+*/
+    public EvaluationContext setMaxPrecision(int bits) {
+	max_precision = bits;
+	return this;
+    }
+
+/**
+* Abort evaluations using this context if an approximation of
+* any subexpression would be larger than <TT>bits</tt> bits.
+* The limit also applies to the working values from which an
+* approximation is computed, e.g. partial sums of series and the
+* products formed by binary splitting, which may be several times
+* larger than the approximation itself.  These are checked before
+* they are computed, where possible.
+* @return this
+*/
+    public EvaluationContext setMaxBits(int bits) {
+	max_bits = bits;
+	return this;
+    }
+
+/**
+* Abort all current and future evaluations using this context.
+*/
+    public void cancel() {
+	cancelled = true;
+    }
+
+/**
+* Has <TT>cancel</tt> been called?
+*/
+    public boolean isCancelled() {
+	return cancelled;
+    }
+
+    // Throw EvaluationAbortedError if the context has been cancelled or
+    // its deadline has passed.
+    void check() {
+	if (cancelled) {
+	    throw new EvaluationAbortedError(
+			EvaluationAbortedError.Reason.CANCELLED);
+	}
+	if (has_deadline && System.nanoTime() - deadline > 0) {
+	    throw new EvaluationAbortedError(
+			EvaluationAbortedError.Reason.DEADLINE);
+	}
+    }
+
+    // Throw EvaluationAbortedError if an approximation with the given
+    // precision is not allowed.
+    void check_precision(int precision) {
+	if (-precision > max_precision) {
+	    throw new EvaluationAbortedError(
+			EvaluationAbortedError.Reason.PRECISION);
+	}
+    }
+
+    // Throw EvaluationAbortedError if an approximation with the given
+    // number of bits is not allowed.
+    void check_bits(int bits) {
+	if (bits > max_bits) {
+	    throw new EvaluationAbortedError(
+			EvaluationAbortedError.Reason.SIZE);
+	}
+    }
+}
@@ -0,0 +1,15 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+/**
+* Thrown by operations on constructive reals when a precision needed
+* during the computation would overflow a 28-bit integer.
+* This should be extremely unlikely, except as an outcome of a division
+* by zero, or other erroneous computation.
+*/
+public class PrecisionOverflowError extends Error {
+    public PrecisionOverflowError() {}
+}
@@ -39,6 +39,11 @@
 package com.sgi.math;
 
 import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
 * Unary functions on constructive reals implemented as objects.
@@ -50,6 +55,97 @@ import java.math.BigInteger;
 public abstract class UnaryCRFunction {
     abstract public CR execute(CR x);
 
+/**
+* Approximate the function at each of several arguments.
+* Element i of the result is
+* <TT>execute(xs[i]).get_appr(precision)</tt>.
+* If <TT>pool</tt> is null, the arguments are evaluated in order.
+* Otherwise they are evaluated in parallel in <TT>pool</tt>,
+* except that the argument of largest magnitude, found from coarse
+* approximations to all of them, is evaluated first.
+* The argument reduction for that argument generally needs the most
+* precise approximations of constants used by all of them, such as
+* <TT>PI</tt> in <TT>cos</tt>, or ln(2) in <TT>exp</tt>, so that
+* the parallel evaluations usually find those in their caches,
+* rather than each computing them again.
+* All evaluations use the caller's <TT>EvaluationContext</tt>, if any.
+*/
+    public BigInteger[] executeAll(final CR xs[], final int precision,
+				   ForkJoinPool pool) {
+	final BigInteger result[] = new BigInteger[xs.length];
+	for_each_argument(xs, pool, new IntConsumer() {
+	    public void accept(int i) {
+		result[i] = execute(xs[i]).get_appr(precision);
+	    }
+	});
+	return result;
+    }
+
+/**
+* Equivalent to <TT>executeAll(xs, precision, CR.parallel_pool)</tt>.
+*/
+    public BigInteger[] executeAll(CR xs[], int precision) {
+	return executeAll(xs, precision, CR.parallel_pool);
+    }
+
+/**
+* Approximate the function at each of several arguments, as
+* <TT>double</tt>s.
+* Element i of the result is <TT>execute(xs[i]).doubleValue()</tt>.
+* Otherwise like <TT>executeAll(xs, precision, pool)</tt>.
+*/
+    public double[] executeAllDouble(final CR xs[], ForkJoinPool pool) {
+	final double result[] = new double[xs.length];
+	for_each_argument(xs, pool, new IntConsumer() {
+	    public void accept(int i) {
+		result[i] = execute(xs[i]).doubleValue();
+	    }
+	});
+	return result;
+    }
+
+/**
+* Equivalent to <TT>executeAllDouble(xs, CR.parallel_pool)</tt>.
+*/
+    public double[] executeAllDouble(CR xs[]) {
+	return executeAllDouble(xs, CR.parallel_pool);
+    }
+
+    // Call body for each index into xs, as described for executeAll.
+    static void for_each_argument(final CR xs[], ForkJoinPool pool,
+				  final IntConsumer body) {
+	int n = xs.length;
+	if (pool == null || n <= 2) {
+	    for (int i = 0; i < n; ++i) body.accept(i);
+	    return;
+	}
+	// Msd(0) needs only an approximation with an error < 1, and is
+	// Integer.MIN_VALUE for arguments too small to need reduction.
+	final int msds[] = new int[n];
+	in_parallel(n, pool, i -> msds[i] = xs[i].msd(0));
+	int largest = 0;
+	for (int i = 1; i < n; ++i) {
+	    if (msds[i] > msds[largest]) largest = i;
+	}
+	body.accept(largest);
+	final int first = largest;
+	in_parallel(n, pool, i -> { if (i != first) body.accept(i); });
+    }
+
+    // Call body for 0 ... n-1 in pool, in the caller's
+    // EvaluationContext.
+    static void in_parallel(int n, ForkJoinPool pool, IntConsumer body) {
+	int grain = n / (8 * pool.getParallelism());
+	if (grain < 1) grain = 1;
+	execute_all_task task = new execute_all_task(body, 0, n, grain,
+					EvaluationContext.current.get());
+	if (ForkJoinTask.getPool() == pool) {
+	    task.invoke();
+	} else {
+	    pool.invoke(task);
+	}
+    }
+
 /**
 * The function object corresponding to the identity function.
 */
@@ -106,7 +202,7 @@ public abstract class UnaryCRFunction {
 * -PI/2 and PI/2.
 */
     public static final UnaryCRFunction asinFunction =
-	UnaryCRFunction.sinFunction.inverseMonotone(half_pi.negate(), half_pi);
+	new asin_UnaryCRFunction();
 
 /**
 * The function object corresponding to the inverse cosine (arccosine) function.
@@ -150,7 +246,22 @@ public abstract class UnaryCRFunction {
 * The original function may be either increasing or decreasing.
 */
     public UnaryCRFunction inverseMonotone(CR low, CR high) {
-	return new inverseMonotone_UnaryCRFunction(this, low, high);
+	return new inverseMonotone_UnaryCRFunction(this, low, high, null);
+    }
+
+/**
+* Compute the inverse of this function, as above, given its
+* <TT>derivative</tt> on [<TT>low</tt>, <TT>high</tt>].
+* High precision approximations to the inverse are then refined from
+* lower precision ones by Newton iteration, which normally needs only
+* a few evaluations of this function per doubling of the precision.
+* Each result is still checked by evaluating this function,
+* so an inaccurate derivative affects only the speed of the computation.
+*/
+    public UnaryCRFunction inverseMonotone(CR low, CR high,
+					   UnaryCRFunction derivative) {
+	return new inverseMonotone_UnaryCRFunction(this, low, high,
+						   derivative);
     }
 
 /**
@@ -164,6 +275,59 @@ public abstract class UnaryCRFunction {
 	return new monotoneDerivative_UnaryCRFunction(this, low, high);
     }
 
+/**
+* Compute the derivative of a function by automatic differentiation.
+* <TT>Execute</tt> applies the chain rule to the constructive real
+* built by this function's <TT>execute</tt>, producing a constructive real
+* for the exact derivative, which is defined wherever the
+* derivatives of the component operations are.
+* There are no monotonicity requirements, and no finite differences.
+* Functions built from the operations of <TT>CR</tt>, including
+* <TT>inverseMonotone</tt> and <TT>monotoneDerivative</tt>, are
+* supported.  <TT>Execute</tt> throws
+* <TT>UnsupportedOperationException</tt> if the result depends on
+* a subclass of <TT>CR</tt> defined outside this package.
+* Abs, max and min are treated as having the derivative of the
+* selected operand, which may be wrong where the operands are equal.
+*/
+    public UnaryCRFunction derivative() {
+	return new derivative_UnaryCRFunction(this);
+    }
+
+}
+
+// Calls body for lo ... hi-1, splitting the range until it has no
+// more than grain elements, in the evaluation context of the thread
+// that created the original task.
+class execute_all_task extends RecursiveAction {
+    final IntConsumer body;
+    final int lo;
+    final int hi;
+    final int grain;
+    final EvaluationContext context;
+    execute_all_task(IntConsumer b, int l, int h, int g,
+		     EvaluationContext c) {
+	body = b;
+	lo = l;
+	hi = h;
+	grain = g;
+	context = c;
+    }
+    protected void compute() {
+	if (hi - lo > grain) {
+	    int mid = (lo + hi) >>> 1;
+	    invokeAll(new execute_all_task(body, lo, mid, grain, context),
+		      new execute_all_task(body, mid, hi, grain, context));
+	    return;
+	}
+	EvaluationContext previous = EvaluationContext.current.get();
+	EvaluationContext.current.set(context);
+	try {
+	    for (int i = lo; i < hi; ++i) body.accept(i);
+	} finally {
+	    EvaluationContext.current.set(previous);
+	}
+    }
 }
 
 // Subclasses of UnaryCRFunction for various built-in functions.
@@ -181,7 +345,8 @@ class cos_UnaryCRFunction extends UnaryCRFunction {
 
 class tan_UnaryCRFunction extends UnaryCRFunction {
     public CR execute(CR x) {
-	return x.sin().divide(x.cos());
+	CR sin_cos[] = x.sinCos();
+	return sin_cos[0].divide(sin_cos[1]);
     }
 }
 
@@ -191,17 +356,20 @@ class acos_UnaryCRFunction extends UnaryCRFunction {
     }
 }
 
-// This uses the identity (sin x)^2 = (tan x)^2/(1 + (tan x)^2)
-// Since we know the tangent of the result, we can get its sine,
-// and then use the asin function.  Note that we don't always
-// want the positive square root when computing the sine.
-class atan_UnaryCRFunction extends UnaryCRFunction {
+// This uses the identity asin(x) = 2 atan(x/(1 + sqrt(1 - x^2))).
+// The argument of atan is between -1 and 1, and the formula loses
+// no accuracy near the ends of the interval.
+class asin_UnaryCRFunction extends UnaryCRFunction {
     CR one = CR.valueOf(1);
     public CR execute(CR x) {
-	CR x2 = x.multiply(x);
-	CR abs_sin_atan = x2.divide(one.add(x2)).sqrt();
-	CR sin_atan = x.select(abs_sin_atan.negate(), abs_sin_atan);
-	return asinFunction.execute(sin_atan);
+	CR cos_asin = one.subtract(x.multiply(x)).sqrt();
+	return x.divide(one.add(cos_asin)).atan().shiftLeft(1);
+    }
+}
+
+class atan_UnaryCRFunction extends UnaryCRFunction {
+    public CR execute(CR x) {
+	return x.atan();
     }
 }
 
@@ -259,6 +427,59 @@ class compose_UnaryCRFunction extends UnaryCRFunction {
     }
 }
 
+// Forward mode automatic differentiation.  We apply f to a fresh
+// variable_CR node standing for x, and differentiate the result
+// with respect to that node, by the rules in CR.differentiate.
+// Nodes that do not depend on it are constants.
+class derivative_UnaryCRFunction extends UnaryCRFunction {
+    final UnaryCRFunction f;
+    derivative_UnaryCRFunction(UnaryCRFunction func) {
+	f = func;
+    }
+    // A node with the same value as op, distinct from all others.
+    static class variable_CR extends CR {
+	final CR op;
+	variable_CR(CR x) { op = x; }
+	protected BigInteger approximate(int p) {
+	    return op.get_appr(p);
+	}
+	boolean next_operand(int p, operand_request r) {
+	    return op.appr_request(p, r);
+	}
+	// Needed for higher derivatives.
+	CR[] derivative_operands() {
+	    return new CR[] { op };
+	}
+	CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	    return op.derivative(var, memo);
+	}
+    }
+    public CR execute(CR x) {
+	CR var = new variable_CR(x);
+	CR result = f.execute(var).derivative(var,
+					      new IdentityHashMap<CR, CR>());
+	return result == null? CR.valueOf(0) : result;
+    }
+    // The derivative at x, as for execute, or null if automatic
+    // differentiation does not apply to f(x).
+    CR derivative_at(CR x) {
+	CR var = new variable_CR(x);
+	CR y = f.execute(var);
+	if (!CR.differentiable(y, var)) return null;
+	CR result = y.derivative(var, new IdentityHashMap<CR, CR>());
+	return result == null? CR.valueOf(0) : result;
+    }
+    // Whether deriv, the result of some UnaryCRFunction.derivative(),
+    // can be evaluated at x.  Derivatives supplied by subclasses of
+    // UnaryCRFunction are assumed to apply everywhere.
+    static boolean applies(UnaryCRFunction deriv, CR x) {
+	if (!(deriv instanceof derivative_UnaryCRFunction)) return true;
+	CR var = new variable_CR(x);
+	return CR.differentiable(
+		((derivative_UnaryCRFunction)deriv).f.execute(var), var);
+    }
+}
+
 class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
   // The following variables are final, so that they
   // can be referenced from the inner class inverseIncreasingCR.
@@ -281,7 +502,10 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
     final int deriv_msd[] = new int[1];
 				// Rough approx. of msd of first
 				// derivative.
-    inverseMonotone_UnaryCRFunction(UnaryCRFunction func, CR l, CR h) {
+    final UnaryCRFunction deriv[] = new UnaryCRFunction[1];
+				// Derivative of f, or null if unknown.
+    inverseMonotone_UnaryCRFunction(UnaryCRFunction func, CR l, CR h,
+				    UnaryCRFunction derivative) {
 	low[0] = l; high[0] = h;
         CR tmp_f_low = func.execute(l);
         CR tmp_f_high = func.execute(h);
@@ -292,11 +516,15 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 	    f_negated[0] = true;
 	    f_low[0] = tmp_f_low.negate();
 	    f_high[0] = tmp_f_high.negate();
+	    if (derivative != null) {
+		deriv[0] = UnaryCRFunction.negateFunction.compose(derivative);
+	    }
 	} else {
 	    f[0] = func;
 	    f_negated[0] = false;
 	    f_low[0] = tmp_f_low;
 	    f_high[0] = tmp_f_high;
+	    deriv[0] = derivative;
 	}
         max_msd[0] = low[0].abs().max(high[0].abs()).msd();
 	max_arg_prec[0] = high[0].subtract(low[0]).msd() - 4;
@@ -319,10 +547,118 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 	    }
 	    return 0;
 	}
+	// An argument x * 2**prec at which f was evaluated, and the
+	// resulting CR, whose cached approximations we want to reuse.
+	// Immutable, since other threads may evaluate this node.
+	final class eval_point {
+	    final int prec;
+	    final BigInteger x;
+	    final CR f_x;
+	    eval_point(BigInteger x, int prec) {
+		this.prec = prec;
+		this.x = x;
+		f_x = f[0].execute(CR.valueOf(x).shiftLeft(prec));
+	    }
+	    // x, scaled by n.  Assumes n <= prec.
+	    BigInteger at(int n) {
+		return x.shiftLeft(prec - n);
+	    }
+	}
+	// The final bracketing interval from the last call to
+	// approximate.  An endpoint is null if it was an end of
+	// the domain.
+	final class bracket {
+	    final eval_point low;
+	    final eval_point high;
+	    bracket(eval_point l, eval_point h) {
+		low = l;
+		high = h;
+	    }
+	}
+	volatile bracket last_bracket;
+	// The approximation to f(pt) at working_eval_prec, if pt can
+	// replace an endpoint of [l, h], i.e. if it lies in [l, h],
+	// and f(pt) is clearly below (side < 0) or above (side > 0)
+	// arg_appr.  Otherwise null.
+	BigInteger reusable_f(eval_point pt, int side,
+			      BigInteger l, BigInteger h,
+			      int working_arg_prec, int working_eval_prec,
+			      BigInteger arg_appr) {
+	    if (pt == null || pt.prec < working_arg_prec) return null;
+	    BigInteger x = pt.at(working_arg_prec);
+	    if (x.compareTo(l) < 0 || x.compareTo(h) > 0) return null;
+	    BigInteger f_x = pt.f_x.get_appr(working_eval_prec);
+	    if (sloppy_compare(f_x, arg_appr) != side) return null;
+	    return f_x;
+	}
+	// Refine rough_appr, an approximation to the result at rough_prec,
+	// by Newton iteration.  Returns the result scaled by
+	// working_arg_prec, within 2 of the true value, or null if
+	// that could not be established in a few steps.  The result is
+	// checked by evaluating f 2 units on either side.
+	// Arg_appr approximates arg at working_eval_prec.
+	BigInteger newton_appr(BigInteger rough_appr, int rough_prec,
+			       int working_arg_prec, int working_eval_prec,
+			       BigInteger arg_appr, BigInteger low_appr,
+			       BigInteger high_appr) {
+	    final UnaryCRFunction fn = f[0];
+	    final int max_steps = 4;
+	    BigInteger x = rough_appr.shiftLeft(rough_prec - working_arg_prec);
+	    CR x_cr = CR.valueOf(x).shiftLeft(working_arg_prec);
+	    // The correction is about 2**rough_prec, and we need it to
+	    // within 2**working_arg_prec, so the derivative is needed
+	    // to about rough_prec - working_arg_prec bits.
+	    int deriv_bits = rough_prec - working_arg_prec + 8;
+	    int deriv_prec = deriv_msd[0] - deriv_bits;
+	    BigInteger deriv_appr = deriv[0].execute(x_cr)
+					    .get_appr(deriv_prec);
+	    if (deriv_appr.signum() <= 0
+		|| deriv_appr.bitLength() < deriv_bits - 4) {
+		// Derivative much smaller than the average slope, so
+		// that we don't know it to enough relative precision.
+		return null;
+	    }
+	    int correction_shift = working_eval_prec - deriv_prec
+				   - working_arg_prec;
+	    BigInteger f_x = fn.execute(x_cr).get_appr(working_eval_prec);
+	    for (int i = 0; i < max_steps; ++i) {
+		check_abort();
+		BigInteger correction = shift(f_x.subtract(arg_appr),
+					      correction_shift)
+					.divide(deriv_appr);
+		x = x.subtract(correction);
+		BigInteger l = x.subtract(big2);
+		BigInteger h = x.add(big2);
+		if (l.compareTo(low_appr) < 0 || h.compareTo(high_appr) > 0) {
+		    return null;
+		}
+		eval_point l_pt = new eval_point(l, working_arg_prec);
+		eval_point h_pt = new eval_point(h, working_arg_prec);
+		BigInteger f_l = l_pt.f_x.get_appr(working_eval_prec);
+		BigInteger f_h = h_pt.f_x.get_appr(working_eval_prec);
+		int l_outcome = sloppy_compare(f_l, arg_appr);
+		int h_outcome = sloppy_compare(f_h, arg_appr);
+		if (l_outcome < 0 && h_outcome > 0) {
+		    last_bracket = new bracket(l_pt, h_pt);
+		    return x;
+		}
+		// Continue from the endpoint nearer the answer.
+		if (h_outcome < 0) {
+		    x = h;
+		    f_x = f_h;
+		} else if (l_outcome > 0) {
+		    x = l;
+		    f_x = f_l;
+		} else {
+		    return null;	// Need more evaluation precision.
+		}
+	    }
+	    return null;
+	}
+
 	protected BigInteger approximate(int p) {
 	    final boolean trace = false;	// Change to generate trace
 	    final int extra_arg_prec = 4;
-	    final UnaryCRFunction fn = f[0];
 	    int small_steps = 0;	// Number of preceding ineffective
 				      	// steps.  If this number gets >= 2,
 				     	// we perform a binary search step
@@ -354,15 +690,20 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 	    // F_l and f_u are scaled by working_eval_prec.
 	    // Working_eval_prec may need to be adjusted depending
 	    // on the derivative of f.
+	    // L_pt and h_pt are the points at which f_l and f_h were
+	    // evaluated, unless at_left or at_right.
 	    boolean at_left, at_right;
 	    BigInteger l, f_l;
 	    BigInteger h, f_h;
+	    eval_point l_pt = null, h_pt = null;
 	    BigInteger low_appr = low[0].get_appr(working_arg_prec)
 				        .add(big1);
 	    BigInteger high_appr = high[0].get_appr(working_arg_prec)
 				          .subtract(big1);
 	    BigInteger arg_appr = arg.get_appr(working_eval_prec);
-	    boolean have_good_appr = (appr_valid && min_prec < max_msd[0]);
+	    appr_cache previous = cache;
+	    boolean have_good_appr = (previous != null
+				      && previous.min_prec < max_msd[0]);
 	    if (digits_needed < 30 && !have_good_appr) {
 		if (trace) {
 		    System.out.println("Setting interval to entire domain");
@@ -384,8 +725,9 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 	        int rough_prec = p + digits_needed/2;
 
 		if (have_good_appr &&
-		    (digits_needed < 30 || min_prec < p + 3*digits_needed/4)) {
-		    rough_prec = min_prec;
+		    (digits_needed < 30
+		     || previous.min_prec < p + 3*digits_needed/4)) {
+		    rough_prec = previous.min_prec;
 		}
 	        BigInteger rough_appr = get_appr(rough_prec);
 		if (trace) {
@@ -393,17 +735,40 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 		    System.out.println("prev. prec = " + rough_prec
 				       + " appr = " + rough_appr);
 		}
+		if (deriv[0] != null && rough_prec > working_arg_prec) {
+		    BigInteger result = newton_appr(rough_appr, rough_prec,
+					working_arg_prec, working_eval_prec,
+					arg_appr, low_appr, high_appr);
+		    if (result != null) {
+			// Answer is less than 1/4 ulp away from result.
+			return scale(result, -extra_arg_prec);
+		    }
+		}
 		h = rough_appr.add(big1)
 			      .shiftLeft(rough_prec - working_arg_prec);
 		l = rough_appr.subtract(big1)
 			      .shiftLeft(rough_prec - working_arg_prec);
+		// The interval from the last call is usually inside
+		// [l, h], and narrower.  If it still brackets the answer
+		// at the new precision, we start from it, and f at its
+		// endpoints can build on the earlier evaluations.
+		bracket reuse = last_bracket;
 	     	if (h.compareTo(high_appr) > 0)  {
 		    h = high_appr;
 	            f_h = f_high[0].get_appr(working_eval_prec);
 		    at_right = true;
 		} else {
-		    CR h_cr = CR.valueOf(h).shiftLeft(working_arg_prec);
-		    f_h = fn.execute(h_cr).get_appr(working_eval_prec);
+		    BigInteger reused_f = (reuse == null? null :
+			reusable_f(reuse.high, 1, l, h, working_arg_prec,
+				   working_eval_prec, arg_appr));
+		    if (reused_f != null) {
+			h_pt = reuse.high;
+			h = h_pt.at(working_arg_prec);
+			f_h = reused_f;
+		    } else {
+			h_pt = new eval_point(h, working_arg_prec);
+			f_h = h_pt.f_x.get_appr(working_eval_prec);
+		    }
 		    at_right = false;
 		}
 	     	if (l.compareTo(low_appr) < 0) {
@@ -411,15 +776,23 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 	            f_l = f_low[0].get_appr(working_eval_prec);
 		    at_left = true;
 		} else {
-		    CR l_cr = CR.valueOf(l).shiftLeft(working_arg_prec);
-		    f_l = fn.execute(l_cr).get_appr(working_eval_prec);
+		    BigInteger reused_f = (reuse == null? null :
+			reusable_f(reuse.low, -1, l, h, working_arg_prec,
+				   working_eval_prec, arg_appr));
+		    if (reused_f != null) {
+			l_pt = reuse.low;
+			l = l_pt.at(working_arg_prec);
+			f_l = reused_f;
+		    } else {
+			l_pt = new eval_point(l, working_arg_prec);
+			f_l = l_pt.f_x.get_appr(working_eval_prec);
+		    }
 		    at_left = false;
 		}
 	    }
 	    BigInteger difference = h.subtract(l);
 	    for(int i = 0;; ++i) {
-	        if (Thread.interrupted() || please_stop)
-		    throw new AbortedError();
+	        check_abort();
 		if (trace) {
 		    System.out.println("***Iteration: " + i);
 		    System.out.println("Arg prec = " + working_arg_prec
@@ -430,6 +803,8 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 		}
 		if (difference.compareTo(big6) < 0) {
 		    // Answer is less than 1/2 ulp away from h.
+		    last_bracket = new bracket(at_left? null : l_pt,
+					       at_right? null : h_pt);
 		    return scale(h, -extra_arg_prec);
 		}
 		BigInteger f_difference = f_h.subtract(f_l);
@@ -470,19 +845,19 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 		    int outcome;
 		    BigInteger tweak = big2;
 		    BigInteger f_guess;
+		    eval_point guess_pt;
 		    for(boolean adj_prec = false;; adj_prec = !adj_prec) {
-		    	CR guess_cr = CR.valueOf(guess)
-			  		.shiftLeft(working_arg_prec);
 		    	if (trace) {
-			    System.out.println("Evaluating at " + guess_cr
+			    System.out.println("Evaluating at " + guess
+					+ " * 2**" + working_arg_prec
 					+ " with precision "
 					+ working_eval_prec);
 		    	}
-		    	CR f_guess_cr = fn.execute(guess_cr);
+		    	guess_pt = new eval_point(guess, working_arg_prec);
 			if (trace) {
-			    System.out.println("fn value = " + f_guess_cr);
+			    System.out.println("fn value = " + guess_pt.f_x);
 			}
-		    	f_guess = f_guess_cr.get_appr(working_eval_prec);
+		    	f_guess = guess_pt.f_x.get_appr(working_eval_prec);
 		    	outcome = sloppy_compare(f_guess, arg_appr);
 			if (outcome != 0) break;
 			// Alternately increase evaluation precision
@@ -493,10 +868,6 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 			    // resolution.
 		    	    int adjustment = deriv_msd[0] > 0 ? -20 :
 							deriv_msd[0] - 20;
-		    	    CR l_cr = CR.valueOf(l)
-			                .shiftLeft(working_arg_prec);
-		    	    CR h_cr = CR.valueOf(h)
-			      		.shiftLeft(working_arg_prec);
 		    	    working_eval_prec += adjustment;
 			    if (trace) {
 				System.out.println("New eval prec = "
@@ -507,14 +878,12 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 			    if (at_left) {
 	    	    	        f_l = f_low[0].get_appr(working_eval_prec);
 			    } else {
-	    	    	        f_l = fn.execute(l_cr)
-					.get_appr(working_eval_prec);
+	    	    	        f_l = l_pt.f_x.get_appr(working_eval_prec);
 			    }
 			    if (at_right) {
 	    	    	        f_h = f_high[0].get_appr(working_eval_prec);
 			    } else {
-	    	    	        f_h = fn.execute(h_cr)
-					.get_appr(working_eval_prec);
+	    	    	        f_h = h_pt.f_x.get_appr(working_eval_prec);
 			    }
 	    	            arg_appr = arg.get_appr(working_eval_prec);
 			} else {
@@ -536,10 +905,12 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 		    if (outcome > 0) {
 			h = guess;
 			f_h = f_guess;
+			h_pt = guess_pt;
 			at_right = false;
 		    } else {
 			l = guess;
 			f_l = f_guess;
+			l_pt = guess_pt;
 			at_left = false;
 		    }
 		    BigInteger new_difference = h.subtract(l);
@@ -553,6 +924,21 @@ class inverseMonotone_UnaryCRFunction extends UnaryCRFunction {
 		}
 	    }
 	}
+	// By the inverse function rule, the derivative is arg'/f'(this).
+	CR[] derivative_operands() {
+	    return new CR[] { arg };
+	}
+	boolean differentiable() {
+	    return deriv[0] != null
+		   || derivative_UnaryCRFunction.applies(f[0].derivative(), this);
+	}
+	CR differentiate(CR var, IdentityHashMap<CR, CR> memo) {
+	    CR d = arg.derivative(var, memo);
+	    if (d == null) return null;
+	    UnaryCRFunction f_deriv =
+		deriv[0] != null? deriv[0] : f[0].derivative();
+	    return d.divide(f_deriv.execute(this));
+	}
     }
     public CR execute(CR x) {
 	return new inverseIncreasingCR(x);
@@ -642,16 +1028,24 @@ class monotoneDerivative_UnaryCRFunction extends UnaryCRFunction {
 	    if (deriv_difference.compareTo(big8) < 0) {
 		return scale(appr_left_deriv, -extra_prec);
 	    } else {
-	        if (Thread.interrupted() || please_stop)
-		    throw new AbortedError();
+	        check_abort();
 		deriv2_msd[0] =
 			eval_prec + deriv_difference.bitLength() + 4/*slop*/;
 		deriv2_msd[0] -= log_delta;
 		return approximate(p);
 	    }
         }
+	// Not differentiable:  we use this node only if automatic
+	// differentiation does not apply to f, and so not to f' either.
     }
+    // We use the exact derivative where automatic differentiation
+    // applies, and finite differences otherwise.
     public CR execute(CR x) {
-	return new monotoneDerivativeCR(x);
+	UnaryCRFunction deriv = f[0].derivative();
+	if (!(deriv instanceof derivative_UnaryCRFunction)) {
+	    return deriv.execute(x);
+	}
+	CR result = ((derivative_UnaryCRFunction)deriv).derivative_at(x);
+	return result != null? result : new monotoneDerivativeCR(x);
     }
 }
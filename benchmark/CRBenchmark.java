@@ -0,0 +1,255 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math.benchmark;
+
+import com.sgi.math.CR;
+import com.sgi.math.UnaryCRFunction;
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+* JMH benchmarks for <TT>get_appr</tt> on each kind of <TT>CR</tt> node,
+* and on the built-in constants and transcendental functions.
+* <P>
+* Each benchmark builds a fresh constructive real through the public
+* API, so that cached approximations are never reused, and then
+* evaluates it with <TT>get_appr(-bits)</tt>.  The comment on each
+* method names the node class it exercises.  Run with <TT>-prof gc</tt>
+* to report allocation per call as <TT>gc.alloc.rate.norm</tt>.
+* <P>
+* <TT>threads</tt> &gt; 0 sets <TT>CR.parallel_pool</tt> to a pool with
+* that many threads, so that sums and products evaluate their operands
+* in parallel.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CRBenchmark {
+    @Param({ "64", "1000", "10000", "100000" })
+    public int bits;
+
+    @Param({ "0" })
+    public int threads;
+
+    // 1/3, as a node that construction cannot simplify.  Its
+    // approximation is a single small division, so that it
+    // contributes little to the time of the node using it.
+    static final class third extends CR {
+	protected BigInteger approximate(int p) {
+	    if (p >= 0) return BigInteger.ZERO;
+	    // floor(2**-p/3 + 1/2)
+	    return BigInteger.ONE.shiftLeft(1 - p).add(BigInteger.valueOf(3))
+			     .divide(BigInteger.valueOf(6));
+	}
+    }
+
+    static final BigInteger large = BigInteger.TEN.pow(30).add(BigInteger.ONE);
+
+    static CR x() {
+	return new third();
+    }
+
+    static CR five_thirds() {
+	return CR.valueOf(5).multiply(x());
+    }
+
+    @Setup(Level.Trial)
+    public void start_pool() {
+	if (threads > 0) CR.parallel_pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop_pool() {
+	ForkJoinPool pool = CR.parallel_pool;
+	CR.parallel_pool = null;
+	if (pool != null) pool.shutdown();
+    }
+
+    // int_CR
+    @Benchmark
+    public BigInteger integer() {
+	return CR.valueOf(large).get_appr(-bits);
+    }
+
+    // dyadic_CR
+    @Benchmark
+    public BigInteger dyadic() {
+	return CR.valueOf(1234567.0/1048576).get_appr(-bits);
+    }
+
+    // rational_CR
+    @Benchmark
+    public BigInteger rational() {
+	return CR.valueOf(1234567).divide(CR.valueOf(1000003)).get_appr(-bits);
+    }
+
+    // add_CR
+    @Benchmark
+    public BigInteger add() {
+	return x().add(x().shiftLeft(1)).get_appr(-bits);
+    }
+
+    // sum_CR
+    @Benchmark
+    public BigInteger sum() {
+	CR terms[] = new CR[1000];
+	for (int i = 0; i < terms.length; ++i) {
+	    terms[i] = x().shiftRight(i % 16);
+	}
+	return CR.sum(terms).get_appr(-bits);
+    }
+
+    // shifted_CR
+    @Benchmark
+    public BigInteger shift() {
+	return x().shiftLeft(-7).get_appr(-bits);
+    }
+
+    // neg_CR
+    @Benchmark
+    public BigInteger negate() {
+	return x().negate().get_appr(-bits);
+    }
+
+    // select_CR
+    @Benchmark
+    public BigInteger select() {
+	return CR.valueOf(-1).select(x(), x().shiftLeft(1)).get_appr(-bits);
+    }
+
+    // mult_CR
+    @Benchmark
+    public BigInteger multiply() {
+	return x().multiply(x().shiftLeft(1)).get_appr(-bits);
+    }
+
+    // prod_CR
+    @Benchmark
+    public BigInteger product() {
+	CR factors[] = new CR[30];
+	for (int i = 0; i < factors.length; ++i) {
+	    factors[i] = x().add(CR.valueOf(i + 1));
+	}
+	return CR.product(factors).get_appr(-bits);
+    }
+
+    // inv_CR
+    @Benchmark
+    public BigInteger inverse() {
+	return x().add(CR.valueOf(7)).inverse().get_appr(-bits);
+    }
+
+    // sqrt_CR
+    @Benchmark
+    public BigInteger sqrt() {
+	return CR.valueOf(2).sqrt().get_appr(-bits);
+    }
+
+    // prescaled_exp_CR, without argument reduction.
+    @Benchmark
+    public BigInteger exp_small() {
+	return x().exp().get_appr(-bits);
+    }
+
+    // prescaled_exp_CR, reduced by a multiple of ln(2).
+    @Benchmark
+    public BigInteger exp() {
+	return five_thirds().exp().get_appr(-bits);
+    }
+
+    // sin_cos_CR
+    @Benchmark
+    public BigInteger cos() {
+	return five_thirds().cos().get_appr(-bits);
+    }
+
+    // Both sin_cos_CR nodes of one sin_cos_pair.
+    @Benchmark
+    public BigInteger sinCos() {
+	CR sc[] = five_thirds().sinCos();
+	return sc[0].add(sc[1]).get_appr(-bits);
+    }
+
+    // agm_ln_CR, and below CR.agm_ln_threshold bits, prescaled_ln_CR.
+    @Benchmark
+    public BigInteger ln() {
+	return five_thirds().ln().get_appr(-bits);
+    }
+
+    // sqrt_CR of a non-constant.
+    @Benchmark
+    public BigInteger sqrt_x() {
+	return five_thirds().sqrt().get_appr(-bits);
+    }
+
+    // atan_CR, by way of asin.
+    @Benchmark
+    public BigInteger asinFunction() {
+	return UnaryCRFunction.asinFunction.execute(x()).get_appr(-bits);
+    }
+
+    // atan_CR
+    @Benchmark
+    public BigInteger atanFunction() {
+	return UnaryCRFunction.atanFunction.execute(x()).get_appr(-bits);
+    }
+
+    // An expression with independent expensive operands, which
+    // benefits from threads > 0.
+    @Benchmark
+    public BigInteger expression() {
+	CR y = CR.valueOf(7).divide(CR.valueOf(4)).add(x());
+	CR z = CR.valueOf(11).multiply(x());
+	return five_thirds().exp().multiply(y.cos()).add(z.ln())
+			    .get_appr(-bits);
+    }
+
+/**
+* <TT>PI</tt> and the constants it is built from, chudnovsky_CR and
+* sqrt_CR, are shared, and keep their cached approximations for the
+* life of the JVM.  So each fork measures a single evaluation, which
+* includes the cost of running cold code.  The first <TT>exp</tt> of
+* an argument that needs reduction is measured the same way, since it
+* also evaluates ln(2), which is built from integral_atanh_CR nodes.
+*/
+    @State(Scope.Thread)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(5)
+    public static class Constants {
+	@Param({ "64", "1000", "10000", "100000" })
+	public int bits;
+
+	@Benchmark
+	public BigInteger PI() {
+	    return CR.PI.get_appr(-bits);
+	}
+
+	// exp(1) = 2 exp(1 - ln(2)).
+	@Benchmark
+	public BigInteger exp1() {
+	    return CR.valueOf(1).exp().get_appr(-bits);
+	}
+    }
+}
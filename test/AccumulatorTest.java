@@ -0,0 +1,111 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+
+// fixed_accumulator, and the series loops that use it, which must
+// give exactly the results of the BigInteger loops.
+public class AccumulatorTest {
+    static BigInteger value(fixed_accumulator x) {
+	return x.to_BigInteger();
+    }
+
+    static BigInteger random_big(Random random) {
+	BigInteger x = new BigInteger(random.nextInt(200), random);
+	return random.nextBoolean()? x.negate() : x;
+    }
+
+    @Test
+    public void operations() {
+	Random random = new Random(25);
+	for (int i = 0; i < 2000; ++i) {
+	    BigInteger x = random_big(random);
+	    BigInteger y = random_big(random);
+	    assertEquals(x, value(new fixed_accumulator(x)));
+	    int m = random.nextInt() >> random.nextInt(31);
+	    if (m == Integer.MIN_VALUE) m = 0;
+	    fixed_accumulator a = new fixed_accumulator(x);
+	    a.multiply_small(m);
+	    assertEquals(x + " * " + m, x.multiply(big(m)), value(a));
+	    int d = (random.nextInt() >>> (1 + random.nextInt(31))) | 1;
+	    a = new fixed_accumulator(x);
+	    a.divide_small(d);
+	    assertEquals(x + " / " + d, x.divide(big(d)), value(a));
+	    a = new fixed_accumulator(x);
+	    a.add(new fixed_accumulator(y));
+	    assertEquals(x + " + " + y, x.add(y), value(a));
+	    a = new fixed_accumulator(x);
+	    a.subtract(new fixed_accumulator(y));
+	    assertEquals(x + " - " + y, x.subtract(y), value(a));
+	    int n = random.nextInt(220) + 1;
+	    a = new fixed_accumulator(x);
+	    a.shift_right_rounded(n);
+	    assertEquals(x + " >> " + n, CR.scale(x, -n), value(a));
+	}
+    }
+
+    // Exact halves, where the rounding direction matters.  CR.scale
+    // rounds them toward +infinity.
+    @Test
+    public void ties() {
+	for (int n : new int[] { 1, 2, 31, 32, 33, 63, 64, 65, 100 }) {
+	    for (long k : new long[] { 0, 1, -1, 2, -2, 12345, -12345 }) {
+		BigInteger half = big(1).shiftLeft(n - 1);
+		for (BigInteger x : new BigInteger[] {
+			 big(k).shiftLeft(n).add(half),
+			 big(k).shiftLeft(n).subtract(half),
+			 big(k).shiftLeft(n).add(half).add(big(1)),
+			 big(k).shiftLeft(n).add(half).subtract(big(1)) }) {
+		    fixed_accumulator a = new fixed_accumulator(x);
+		    a.shift_right_rounded(n);
+		    assertEquals(x + " >> " + n, CR.scale(x, -n), value(a));
+		}
+	    }
+	}
+    }
+
+    // exp and ln of dyadic arguments, whose approximations have
+    // short significands, by both loops.
+    static void compare_loops(String what, Reference.maker make) {
+	for (int p = -1; p > -prescaled_exp_CR.bit_burst_min_bits; p -= 37) {
+	    fixed_accumulator.enabled = true;
+	    BigInteger fast;
+	    BigInteger slow;
+	    try {
+		fast = make.make().get_appr(p);
+		fixed_accumulator.enabled = false;
+		slow = make.make().get_appr(p);
+	    } finally {
+		fixed_accumulator.enabled = true;
+	    }
+	    assertEquals(what + " at " + p, slow, fast);
+	}
+    }
+
+    @Test
+    public void seriesLoops() {
+	for (long n : new long[] { 1, -1, 3, -3, 5, -7, 255, -255 }) {
+	    CR x = CR.valueOf(n).shiftRight(9);
+	    compare_loops("exp(" + n + "/512)", () -> new prescaled_exp_CR(x));
+	    compare_loops("ln(1 + " + n + "/512)",
+			  () -> new prescaled_ln_CR(x));
+	}
+	// The common results are also correct.
+	CR y = CR.valueOf(-3).shiftRight(3);
+	for (int p : new int[] { -10, -300, -900 }) {
+	    assert_appr("exp(-3/8)", new prescaled_exp_CR(y), p,
+			w -> Reference.exp(big(-3), big(8), w));
+	    assert_appr("ln(5/8)", new prescaled_ln_CR(y), p,
+			w -> Reference.ln(big(5), big(8), w));
+	}
+    }
+}
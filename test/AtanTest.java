@@ -0,0 +1,79 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.assert_apprs;
+import static com.sgi.math.Reference.big;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// atan_CR, and the functions built on it.
+public class AtanTest {
+    static final int precisions[] = { 10, 0, -1, -100, -1000, -5000, -20000 };
+
+    // n/d, as a node that construction cannot fold into a constant.
+    static CR arg(long n, long d) {
+	return CR.valueOf(n).multiply(CR.valueOf(d).sqrt().multiply(
+				CR.valueOf(d).sqrt()).inverse());
+    }
+
+    static void check(long n, long d) {
+	assert_apprs("atan(" + n + "/" + d + ")",
+		     () -> UnaryCRFunction.atanFunction.execute(arg(n, d)),
+		     precisions, w -> Reference.atan(big(n), big(d), w));
+    }
+
+    @Test
+    public void smallArguments() {
+	check(1, 1000);
+	check(-1, 3);
+	check(1, 2);
+	check(3, 7);
+    }
+
+    // Arguments reduced by 1/x, or by (1-w)/(1+w).
+    @Test
+    public void reducedArguments() {
+	check(1, 1);
+	check(-5, 7);
+	check(3, 2);
+	check(-1000, 1);
+	check(1000001, 3);
+    }
+
+    // Irrational arguments with known arctangents, each node
+    // refined through increasing precisions.
+    @Test
+    public void refinement() {
+	CR root3 = CR.valueOf(3).sqrt();
+	CR x = UnaryCRFunction.atanFunction.execute(root3);
+	CR y = UnaryCRFunction.atanFunction.execute(
+		    root3.subtract(CR.valueOf(2)));
+	for (int p : precisions) {
+	    assert_appr("atan(sqrt(3))", x, p,
+			w -> Reference.pi(w).divide(big(3)));
+	    assert_appr("atan(sqrt(3) - 2)", y, p,
+			w -> Reference.pi(w).divide(big(12)).negate());
+	}
+    }
+
+    @Test
+    public void asinAndAcos() {
+	int ps[] = { 0, -10, -300, -3000 };
+	// asin(-3/5) = -atan(3/4), acos(5/13) = atan(12/5), and
+	// asin(1) = PI/2.
+	assert_apprs("asin(-3/5)",
+		     () -> UnaryCRFunction.asinFunction.execute(arg(-3, 5)),
+		     ps, w -> Reference.atan(big(-3), big(4), w));
+	assert_apprs("acos(5/13)",
+		     () -> UnaryCRFunction.acosFunction.execute(arg(5, 13)),
+		     ps, w -> Reference.atan(big(12), big(5), w));
+	assert_apprs("asin(1)",
+		     () -> UnaryCRFunction.asinFunction.execute(arg(1, 1)),
+		     ps, w -> Reference.pi(w).shiftRight(1));
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// The constants evaluated by binary splitting:  PI, from the
+// Chudnovsky series, atan(1/n), from Euler's series, and ln(2),
+// from atanh(1/n).  The reference uses Machin's formula and the
+// Taylor series instead.
+public class BinarySplittingTest {
+    static final int precisions[] = { -1, -10, -47, -48, -64, -1000, -4000,
+				      -20000 };
+
+    @Test
+    public void pi() {
+	// Increasing precision, so that each is a new evaluation.
+	for (int p : precisions) {
+	    assert_appr("PI", CR.PI, p, Reference::pi);
+	}
+    }
+
+    @Test
+    public void atanReciprocal() {
+	int ns[] = { 2, 5, 57, 239, 46341 };
+	for (int n : ns) {
+	    for (int p : precisions) {
+		assert_appr("atan(1/" + n + ")", CR.atan_reciprocal(n), p,
+			    w -> Reference.atan(big(1), big(n), w));
+	    }
+	}
+    }
+
+    @Test
+    public void ln2() {
+	for (int p : precisions) {
+	    assert_appr("ln(2)", CR.ln2, p, Reference::ln2);
+	}
+    }
+
+    // The series 1 + 1/2 + 1/4 + ..., as a check on the recursion
+    // itself, including q_shift.
+    @Test
+    public void geometricSeries() {
+	binary_split_series halves = new binary_split_series() {
+	    BigInteger a(int k) { return big(1); }
+	    BigInteger p(int k) { return big(1); }
+	    BigInteger q(int k) { return k == 0? big(1) : big(2); }
+	};
+	binary_split_series quarters = new binary_split_series() {
+	    BigInteger a(int k) { return big(1); }
+	    BigInteger p(int k) { return k == 0? big(4) : big(1); }
+	    BigInteger q(int k) { return big(1); }
+	};
+	quarters.q_shift = 2;
+	for (int n = 1; n < 60; ++n) {
+	    // 2 - 2**(1-n), scaled by 2**64, rounded down.
+	    BigInteger expected = big(2).shiftLeft(64)
+					.subtract(big(1).shiftLeft(65 - n));
+	    assertEquals(expected, halves.fixed_sum(n, -64));
+	    // 4/3 (1 - 4**-n), scaled by 2**64, rounded down.
+	    BigInteger scaled = big(1).shiftLeft(2*n).subtract(big(1))
+				      .shiftLeft(66);
+	    assertEquals(Reference.fixed(scaled, big(3).shiftLeft(2*n), 0),
+			 quarters.fixed_sum(n, -64));
+	}
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.InverseMonotoneTest.cbrt;
+import static com.sgi.math.Reference.assert_appr;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+// Reuse of the last bracket, and of the function values at its ends,
+// when an inverse computed without a derivative is refined.
+public class BracketReuseTest {
+    static UnaryCRFunction cube_root(InverseMonotoneTest.cube f) {
+	return f.inverseMonotone(CR.valueOf(1), CR.valueOf(11));
+    }
+
+    // A small step in precision starts from the last bracket, and
+    // evaluates the function only a few times.  A new node needs
+    // a full search from the original bounds.
+    @Test
+    public void nearbyPrecisions() {
+	InverseMonotoneTest.cube reused = new InverseMonotoneTest.cube();
+	InverseMonotoneTest.cube fresh = new InverseMonotoneTest.cube();
+	CR x = cube_root(reused).execute(CR.valueOf(2));
+	assert_appr("cbrt(2)", x, -100, w -> cbrt(2, w));
+	int reused_calls = 0;
+	int fresh_calls = 0;
+	for (int p : new int[] { -101, -104, -110, -120, -150 }) {
+	    int before = reused.calls.get();
+	    assert_appr("cbrt(2)", x, p, w -> cbrt(2, w));
+	    reused_calls += reused.calls.get() - before;
+	    before = fresh.calls.get();
+	    assert_appr("cbrt(2)", cube_root(fresh).execute(CR.valueOf(2)), p,
+			w -> cbrt(2, w));
+	    fresh_calls += fresh.calls.get() - before;
+	}
+	assertTrue(reused_calls + " evaluations", reused_calls <= 5 * 3);
+	assertTrue(reused_calls + " vs. " + fresh_calls + " evaluations",
+		   4 * reused_calls < fresh_calls);
+    }
+
+    // A coarser request after a finer one is answered from the
+    // cache, and a later finer one must still be correct.
+    @Test
+    public void decreasingPrecisions() {
+	CR x = cube_root(new InverseMonotoneTest.cube()).execute(CR.valueOf(5));
+	for (int p : new int[] { -300, -50, -2, 0, 3, -301, -80, -1000 }) {
+	    assert_appr("cbrt(5)", x, p, w -> cbrt(5, w));
+	}
+    }
+
+    // Arguments near the bounds of the domain, where one end of the
+    // bracket is a bound rather than an evaluated point.
+    @Test
+    public void nearTheBounds() {
+	UnaryCRFunction root = cube_root(new InverseMonotoneTest.cube());
+	for (long n : new long[] { 1, 1331 }) {
+	    CR x = root.execute(CR.valueOf(n));
+	    for (int p : new int[] { -10, -11, -40, -41, -200 }) {
+		assert_appr("cbrt(" + n + ")", x, p, w -> cbrt(n, w));
+	    }
+	}
+    }
+
+    // Threads refine one node at interleaved precisions, racing to
+    // replace its last bracket.
+    @Test
+    public void concurrentRefinement() throws Exception {
+	CR x = cube_root(new InverseMonotoneTest.cube()).execute(CR.valueOf(999));
+	ExecutorService pool = Executors.newFixedThreadPool(4);
+	try {
+	    List<Future<?>> results = new ArrayList<>();
+	    for (int t = 0; t < 4; ++t) {
+		int start = -20 - 3 * t;
+		results.add(pool.submit((Callable<Void>) () -> {
+		    for (int p = start; p >= -400; p -= 13) {
+			int q = p;
+			assert_appr("cbrt(999)", x, q, w -> cbrt(999, w));
+		    }
+		    return null;
+		}));
+	    }
+	    for (Future<?> r : results) r.get();
+	} finally {
+	    pool.shutdown();
+	}
+    }
+}
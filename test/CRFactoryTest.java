@@ -0,0 +1,107 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// Sharing of equal subexpressions by CRFactory, and collection of
+// the table entries once the nodes are no longer used.
+public class CRFactoryTest {
+    @Test
+    public void sharing() {
+	CRFactory f = new CRFactory();
+	CR x = f.sqrt(f.valueOf(2));
+	CR y = f.valueOf(3);
+	assertSame(x, f.sqrt(f.valueOf(2)));
+	assertSame(f.add(x, y), f.add(y, x));
+	assertSame(f.multiply(x, y), f.multiply(y, x));
+	assertSame(f.exp(x), f.exp(x));
+	assertSame(f.subtract(x, y), f.add(x, f.negate(y)));
+	assertSame(f.sin(x), f.sinCos(x)[0]);
+	assertSame(f.cos(x), f.sinCos(x)[1]);
+	assertSame(f.sum(x, y, x), f.sum(x, y, x));
+	assertSame(f.shiftRight(x, 3), f.shiftLeft(x, -3));
+	assertSame(f.apply(UnaryCRFunction.atanFunction, x),
+		   f.apply(UnaryCRFunction.atanFunction, x));
+	assertTrue(f.add(x, y) != f.add(x, f.valueOf(4)));
+	// exp(sqrt(2)) - sqrt(2) * 3, sharing both sqrt(2) nodes.
+	CR z = f.subtract(f.exp(x), f.multiply(x, y));
+	assert_appr("exp(sqrt(2)) - 3 sqrt(2)", z, -300,
+		    w -> Reference.exp_series(Reference.sqrt(big(2), big(1), w + 20),
+					      w + 20).shiftRight(20)
+			 .subtract(Reference.sqrt(big(18), big(1), w)));
+    }
+
+    // Wait for the garbage collector to clear the table, which should
+    // have at most max entries left.
+    static void assert_collected(CRFactory f, int max) {
+	for (int i = 0; i < 100 && f.size() > max; ++i) {
+	    System.gc();
+	    try {
+		Thread.sleep(10);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	assertTrue(f.size() + " entries left", f.size() <= max);
+    }
+
+    @Test
+    public void collected() {
+	CRFactory f = new CRFactory();
+	for (int i = 0; i < 1000; ++i) {
+	    CR x = f.exp(f.valueOf(i));
+	    f.add(x, f.sqrt(x)).get_appr(-10);
+	}
+	assert_collected(f, 0);
+    }
+
+    // Operations whose result is an operand, or reachable from one,
+    // which a strongly held key would keep from being collected.
+    @Test
+    public void resultsReachableFromOperands() {
+	CRFactory f = new CRFactory();
+	CR zero = f.valueOf(0);
+	CR one = f.valueOf(1);
+	for (int i = 0; i < 1000; ++i) {
+	    CR x = CR.valueOf(i).sqrt();
+	    assertSame(x, f.shiftLeft(x, 0));
+	    f.sum(x);
+	    f.product(x);
+	    f.negate(f.negate(x));
+	    f.apply(UnaryCRFunction.identityFunction, x);
+	    f.add(x, zero);
+	    f.multiply(x, one);
+	    f.negate(f.sqrt(x));
+	}
+	// zero and one are still in use.
+	assert_collected(f, 2);
+	assertSame(zero, f.valueOf(0));
+	assertEquals(0, zero.signum(-10));
+    }
+
+    // Once one of sin(x) and cos(x) is collected, the next call
+    // again returns a sine and cosine sharing one evaluation.
+    @Test
+    public void sinCosPair() {
+	CRFactory f = new CRFactory();
+	CR x = CR.valueOf(2).sqrt();
+	CR sin = f.sin(x);
+	assert_collected(f, 1);
+	CR sc[] = f.sinCos(x);
+	assertSame(((sin_cos_CR)sc[0]).pair, ((sin_cos_CR)sc[1]).pair);
+	assertSame(sc[0], f.sin(x));
+	assertSame(sc[1], f.cos(x));
+	assert_appr("sin(sqrt(2))", sin, -100,
+		    w -> Reference.sin_cos(Reference.sqrt(big(2), big(1), w + 8),
+					   big(1).shiftLeft(w + 8), w)[0]);
+    }
+}
@@ -0,0 +1,146 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// The public operations of CR, checked against Reference at a range
+// of precisions.
+public class CRTest {
+    static final int precisions[] = { 10, 0, -1, -10, -64, -200, -1000 };
+
+    static final String pi_50 =
+	"3.14159265358979323846264338327950288419716939937510";
+
+    @Test
+    public void piDigits() {
+	// Correctly rounded, or 1 away, in the last place.
+	BigInteger digits = new BigInteger(CR.PI.toString(50).replace(".", ""));
+	BigInteger expected = new BigInteger(pi_50.replace(".", ""));
+	assertTrue(digits.subtract(expected).abs().compareTo(big(1)) <= 0);
+	assertEquals(Math.PI, CR.PI.doubleValue(), 0.0);
+	for (int p : precisions) {
+	    assert_appr("PI", CR.PI, p, Reference::pi);
+	}
+    }
+
+    @Test
+    public void referenceAgreesWithKnownDigits() {
+	BigInteger scaled_pi = Reference.pi(200).multiply(BigInteger.TEN.pow(50))
+					       .shiftRight(200);
+	assertEquals(pi_50.replace(".", ""), scaled_pi.toString());
+	assertEquals(Math.E, Reference.exp(big(1), big(1), 60).doubleValue()
+			     / Math.pow(2, 60), 1e-15);
+	assertEquals(Math.log(10), Reference.ln(big(10), big(1), 60)
+				   .doubleValue() / Math.pow(2, 60), 1e-15);
+	assertEquals(Math.atan(3), Reference.atan(big(3), big(1), 60)
+				   .doubleValue() / Math.pow(2, 60), 1e-15);
+	assertEquals(Math.sin(-5), Reference.sin_cos(big(-5), big(1), 60)[0]
+				   .doubleValue() / Math.pow(2, 60), 1e-15);
+    }
+
+    @Test
+    public void arithmetic() {
+	CR third = CR.valueOf(1).divide(CR.valueOf(3));
+	CR sqrt2 = CR.valueOf(2).sqrt();
+	for (int p : precisions) {
+	    assert_appr("1/3 + sqrt(2)", third.add(sqrt2), p,
+			w -> Reference.fixed(big(1), big(3), w)
+				      .add(Reference.sqrt(big(2), big(1), w)));
+	    assert_appr("sqrt(2) * -7/3", sqrt2.multiply(CR.valueOf(-7))
+					       .divide(CR.valueOf(3)), p,
+			w -> Reference.sqrt(big(98), big(9), w).negate());
+	    assert_appr("1/sqrt(2)", sqrt2.inverse(), p,
+			w -> Reference.sqrt(big(1), big(2), w));
+	    assert_appr("sqrt(2) - 1/3", sqrt2.subtract(third), p,
+			w -> Reference.sqrt(big(2), big(1), w)
+				      .subtract(Reference.fixed(big(1), big(3), w)));
+	    assert_appr("sqrt(2) * 2**-5", sqrt2.shiftRight(5), p,
+			w -> Reference.sqrt(big(2), big(1), w).shiftRight(5));
+	}
+    }
+
+    @Test
+    public void transcendentals() {
+	CR x = CR.valueOf(7).divide(CR.valueOf(5));
+	for (int p : precisions) {
+	    assert_appr("exp(7/5)", x.exp(), p,
+			w -> Reference.exp(big(7), big(5), w));
+	    assert_appr("exp(-7/5)", x.negate().exp(), p,
+			w -> Reference.exp(big(-7), big(5), w));
+	    assert_appr("ln(7/5)", x.ln(), p,
+			w -> Reference.ln(big(7), big(5), w));
+	    assert_appr("ln(1000)", CR.valueOf(1000).ln(), p,
+			w -> Reference.ln(big(1000), big(1), w));
+	    assert_appr("sin(7/5)", x.sin(), p,
+			w -> Reference.sin_cos(big(7), big(5), w)[0]);
+	    assert_appr("cos(7/5)", x.cos(), p,
+			w -> Reference.sin_cos(big(7), big(5), w)[1]);
+	    assert_appr("cos(-20)", CR.valueOf(-20).cos(), p,
+			w -> Reference.sin_cos(big(-20), big(1), w)[1]);
+	}
+    }
+
+    @Test
+    public void functionObjects() {
+	CR x = CR.valueOf(-3).divide(CR.valueOf(5));
+	for (int p : precisions) {
+	    assert_appr("atan(-3/5)",
+			UnaryCRFunction.atanFunction.execute(x), p,
+			w -> Reference.atan(big(-3), big(5), w));
+	    // asin(-3/5) = atan(-3/4)
+	    assert_appr("asin(-3/5)",
+			UnaryCRFunction.asinFunction.execute(x), p,
+			w -> Reference.atan(big(-3), big(4), w));
+	    // acos(-3/5) = PI - atan(4/3)
+	    assert_appr("acos(-3/5)",
+			UnaryCRFunction.acosFunction.execute(x), p,
+			w -> Reference.pi(w).subtract(
+				Reference.atan(big(4), big(3), w)));
+	    assert_appr("tan(-3/5)",
+			UnaryCRFunction.tanFunction.execute(x), p,
+			w -> {
+			    BigInteger sc[] =
+				Reference.sin_cos(big(-3), big(5), w + 8);
+			    return sc[0].shiftLeft(w + 8).divide(sc[1])
+					.shiftRight(8);
+			});
+	}
+    }
+
+    @Test
+    public void conversions() {
+	CR x = CR.valueOf("-12.375", 10);
+	assertEquals(-12.375, x.doubleValue(), 0.0);
+	assertEquals("-12.3750", x.toString(4));
+	assertEquals("-c.60", x.toString(2, 16));
+	assertEquals(-12, x.intValue());
+	assertEquals(Math.sqrt(3), CR.valueOf(3).sqrt().doubleValue(), 0.0);
+	assertEquals(1e-30, CR.valueOf(1e-30).doubleValue(), 0.0);
+	assertEquals(0.1f, CR.valueOf(0.1f).floatValue(), 0.0f);
+    }
+
+    @Test
+    public void comparisons() {
+	CR sqrt2 = CR.valueOf(2).sqrt();
+	CR x = CR.valueOf(99).divide(CR.valueOf(70));	// > sqrt(2)
+	assertEquals(-1, sqrt2.compareTo(x));
+	assertEquals(1, x.compareTo(sqrt2));
+	assertEquals(-1, sqrt2.compareTo(x, -20));
+	assertEquals(0, sqrt2.multiply(sqrt2).compareTo(CR.valueOf(2), -100));
+	assertEquals(1, sqrt2.signum());
+	assertEquals(-1, sqrt2.negate().signum());
+	assertEquals(0, sqrt2.subtract(sqrt2).signum(-50));
+	assertEquals(0, sqrt2.max(x).compareTo(x, -60));
+	assertEquals(0, sqrt2.min(x).compareTo(sqrt2, -60));
+	assertEquals(0, sqrt2.negate().abs().compareTo(sqrt2, -60));
+    }
+}
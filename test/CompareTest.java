@@ -0,0 +1,127 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+// Comparisons and signum, which first try cached approximations, and
+// then approximations to about 53 bits, before the requested tolerance.
+public class CompareTest {
+    // n/d, recording the finest precision at which it is evaluated.
+    static final class fraction extends CR {
+	final long n;
+	final long d;
+	volatile int finest = Integer.MAX_VALUE;
+	fraction(long n, long d) {
+	    this.n = n;
+	    this.d = d;
+	}
+	protected BigInteger approximate(int p) {
+	    if (p < finest) finest = p;
+	    return CR.valueOf(n).divide(CR.valueOf(d)).get_appr(p);
+	}
+    }
+
+    // The exact sign of n1/d1 - n2/d2, for positive d1 and d2.
+    static int exact_compare(long n1, long d1, long n2, long d2) {
+	return big(n1).multiply(big(d2)).compareTo(big(n2).multiply(big(d1)));
+    }
+
+    @Test
+    public void againstExact() {
+	Random random = new Random(19);
+	for (int i = 0; i < 300; ++i) {
+	    long n1 = random.nextInt(2001) - 1000;
+	    long d1 = random.nextInt(30) + 1;
+	    long n2 = random.nextInt(2001) - 1000;
+	    long d2 = random.nextInt(30) + 1;
+	    if (i % 3 == 0) n2 = n1 * d2 / d1;	// often equal
+	    int expected = exact_compare(n1, d1, n2, d2);
+	    for (int a : new int[] { 5, -2, -60, -500 }) {
+		CR x = new fraction(n1, d1);
+		CR y = new fraction(n2, d2);
+		int result = x.compareTo(y, a);
+		String what = n1 + "/" + d1 + " vs " + n2 + "/" + d2 + " at " + a;
+		// Values closer than 1/900 are only decided below -10.
+		if (expected == 0 || a >= -10) {
+		    assertTrue(what, result == 0 || result == expected);
+		} else {
+		    assertEquals(what, expected, result);
+		}
+		if (expected != 0) {
+		    assertEquals(what, expected,
+				 new fraction(n1, d1).compareTo(new fraction(n2, d2)));
+		}
+		int sign = Long.signum(n1);
+		result = new fraction(n1, d1).signum(a);
+		assertTrue(what, result == sign || result == 0 && a >= -10);
+	    }
+	}
+    }
+
+    // Values that the quick step cannot separate are still compared
+    // correctly at the requested tolerance.
+    @Test
+    public void closeValues() {
+	CR x = CR.valueOf(2).sqrt();
+	CR y = x.add(CR.valueOf(1).shiftRight(200));
+	assertEquals(0, x.compareTo(y, -100));
+	assertEquals(-1, x.compareTo(y, -300));
+	assertEquals(1, y.compareTo(x, -300));
+	assertEquals(-1, x.compareTo(y));
+	CR tiny = CR.valueOf(-1).shiftRight(300);
+	assertEquals(0, tiny.signum(-200));
+	assertEquals(-1, tiny.signum(-400));
+	assertEquals(-1, tiny.signum());
+	// Large values, where the tolerance of the quick step comes
+	// from the cached magnitude.
+	CR big_x = CR.valueOf(3).shiftLeft(1000);
+	CR big_y = big_x.add(CR.valueOf(1));
+	big_x.get_appr(900);
+	big_y.get_appr(900);
+	assertEquals(-1, big_x.compareTo(big_y, -5));
+    }
+
+    // Values that differ in the first few bits are evaluated only to
+    // about 53 bits, however fine the tolerance.
+    @Test
+    public void quickStep() {
+	fraction x = new fraction(1, 3);
+	fraction y = new fraction(1, 7);
+	assertEquals(1, x.compareTo(y, -100000));
+	assertTrue(x.finest >= -60 && y.finest >= -60);
+	fraction z = new fraction(-5, 11);
+	assertEquals(-1, z.signum(-100000));
+	assertTrue(z.finest >= -60);
+	// Now decided from the cached approximations alone.
+	assertEquals(-1, z.compareTo(y, -100000));
+	assertTrue(z.finest >= -60);
+    }
+
+    @Test
+    public void sorting() {
+	Random random = new Random(3);
+	CR xs[] = new CR[200];
+	long ns[] = new long[xs.length];
+	for (int i = 0; i < xs.length; ++i) {
+	    ns[i] = random.nextInt(1 << 20) + 1;
+	    xs[i] = CR.valueOf(ns[i]).sqrt();
+	}
+	Arrays.sort(xs, (x, y) -> x.compareTo(y, -1000));
+	Arrays.sort(ns);
+	for (int i = 0; i < xs.length; ++i) {
+	    BigInteger square = xs[i].multiply(xs[i]).get_appr(-10);
+	    assertEquals(big(ns[i]).shiftLeft(10).doubleValue(),
+			 square.doubleValue(), 1.0);
+	}
+    }
+}
@@ -0,0 +1,171 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+// The approximation cache, shared by threads evaluating the same
+// constructive reals.
+public class ConcurrentCacheTest {
+    static final int threads = 8;
+
+    // 1/3, counting calls to approximate.
+    static final class counted_third extends CR {
+	final AtomicInteger calls = new AtomicInteger();
+	protected BigInteger approximate(int p) {
+	    calls.incrementAndGet();
+	    try {
+		Thread.sleep(20);
+	    } catch (InterruptedException e) {
+		throw new AbortedError();
+	    }
+	    if (p >= 0) return big0;
+	    return big1.shiftLeft(1 - p).add(big(3)).divide(big(6));
+	}
+    }
+
+    static <T> List<T> run_all(List<Callable<T>> tasks) throws Exception {
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    List<T> results = new ArrayList<T>();
+	    for (Future<T> f : executor.invokeAll(tasks)) results.add(f.get());
+	    return results;
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    // Threads evaluating one expression at different precisions
+    // all get correct answers, whichever of them fills the cache.
+    @Test
+    public void mixedPrecisions() throws Exception {
+	CR x = CR.valueOf(7).divide(CR.valueOf(5));
+	CR e = x.exp().add(x.sqrt()).multiply(x.ln());
+	List<Callable<BigInteger>> tasks = new ArrayList<Callable<BigInteger>>();
+	final int ps[] = new int[64];
+	for (int i = 0; i < ps.length; ++i) {
+	    final int p = -1 - (i * 37) % 1500;
+	    ps[i] = p;
+	    tasks.add(() -> e.get_appr(p));
+	}
+	List<BigInteger> results = run_all(tasks);
+	for (int i = 0; i < ps.length; ++i) {
+	    assert_appr("(exp(7/5) + sqrt(7/5)) ln(7/5)", results.get(i), ps[i],
+			w -> {
+			    int wg = w + 16;
+			    BigInteger sum =
+				Reference.exp(big(7), big(5), wg)
+					 .add(Reference.sqrt(big(7), big(5), wg));
+			    return sum.multiply(Reference.ln(big(7), big(5), wg))
+				      .shiftRight(wg + 16);
+			});
+	}
+	// The cache holds the most precise of them.
+	int min_prec = 0;
+	for (int p : ps) min_prec = Math.min(min_prec, p);
+	assertEquals(min_prec, e.cache.min_prec);
+    }
+
+    // The cache is replaced only by a more precise approximation.
+    @Test
+    public void cacheOnlyImproves() throws Exception {
+	CR x = CR.valueOf(2).sqrt();
+	List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+	for (int i = 0; i < threads; ++i) {
+	    final int offset = i;
+	    tasks.add(() -> {
+		int previous = Integer.MAX_VALUE;
+		for (int j = 0; j < 200; ++j) {
+		    x.update_cache(-((j * 13 + offset * 7) % 300),
+				   big(j));
+		    int current = x.cache.min_prec;
+		    if (current > previous) return current;
+		    previous = current;
+		}
+		return null;
+	    });
+	}
+	for (Integer regressed : run_all(tasks)) {
+	    assertEquals(null, regressed);
+	}
+	assertEquals(-299, x.cache.min_prec);
+    }
+
+    // So are the approximations shared by a sine and cosine.
+    @Test
+    public void pairCacheOnlyImproves() throws Exception {
+	sin_cos_pair pair = new sin_cos_pair(CR.valueOf(2).sqrt());
+	List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+	for (int i = 0; i < threads; ++i) {
+	    final int offset = i;
+	    tasks.add(() -> {
+		int previous = Integer.MAX_VALUE;
+		for (int j = 0; j < 100; ++j) {
+		    int p = -1 - (j * 37 + offset * 11) % 600;
+		    BigInteger apprs[] = pair.get_apprs(p);
+		    assert_appr("sin(sqrt(2))", apprs[0], p,
+				w -> Reference.sin_cos(
+					Reference.sqrt(big(2), big(1), w + 8),
+					big(1).shiftLeft(w + 8), w)[0]);
+		    int current = pair.cache.prec;
+		    if (current > previous) return current;
+		    previous = current;
+		}
+		return null;
+	    });
+	}
+	for (Integer regressed : run_all(tasks)) {
+	    assertEquals(null, regressed);
+	}
+    }
+
+    // With share_evaluations, concurrent requests for the same
+    // approximation compute it only once.
+    @Test
+    public void sharedEvaluations() throws Exception {
+	boolean saved = CR.share_evaluations;
+	CR.share_evaluations = true;
+	try {
+	    counted_third x = new counted_third();
+	    List<Callable<BigInteger>> tasks =
+		new ArrayList<Callable<BigInteger>>();
+	    for (int i = 0; i < threads; ++i) tasks.add(() -> x.get_appr(-100));
+	    for (BigInteger appr : run_all(tasks)) {
+		assert_appr("1/3", appr, -100,
+			    w -> Reference.fixed(big(1), big(3), w));
+	    }
+	    assertEquals(1, x.calls.get());
+	} finally {
+	    CR.share_evaluations = saved;
+	}
+    }
+
+    // Without it, each thread may compute its own, but all results
+    // are still correct.
+    @Test
+    public void unsharedEvaluations() throws Exception {
+	counted_third x = new counted_third();
+	List<Callable<BigInteger>> tasks = new ArrayList<Callable<BigInteger>>();
+	for (int i = 0; i < threads; ++i) tasks.add(() -> x.get_appr(-100));
+	for (BigInteger appr : run_all(tasks)) {
+	    assert_appr("1/3", appr, -100,
+			w -> Reference.fixed(big(1), big(3), w));
+	}
+	assertTrue(x.calls.get() >= 1 && x.calls.get() <= threads);
+    }
+}
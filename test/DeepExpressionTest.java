@@ -0,0 +1,138 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// Expressions nested far more deeply than CR.max_recursion_depth,
+// built with each kind of node that supports evaluation with an
+// explicit stack.  Each has an exact rational value.  Products and
+// inverses are less deep, since each level repeatedly probes the
+// magnitude of the level below, so that their cost grows
+// quadratically with depth.
+public class DeepExpressionTest {
+    // 1/3, as a node that construction cannot simplify.
+    static final class third extends CR {
+	protected BigInteger approximate(int p) {
+	    if (p >= 0) return big0;
+	    return big1.shiftLeft(1 - p).add(big(3)).divide(big(6));
+	}
+    }
+
+    static final int precisions[] = { 0, -10, -100 };
+
+    static void check(String what, CR x, BigInteger n, BigInteger d) {
+	for (int p : precisions) {
+	    assert_appr(what, x, p, w -> Reference.fixed(n, d, w));
+	}
+    }
+
+    @Test
+    public void additions() {
+	CR x = new third();
+	int depth = 20000;
+	for (int i = 1; i <= depth; ++i) x = x.add(CR.valueOf(i));
+	// 1/3 + depth (depth + 1)/2
+	check("additions", x,
+	      big(1).add(big(3L * depth * (depth + 1) / 2)), big(3));
+    }
+
+    @Test
+    public void negations() {
+	CR x = new third();
+	BigInteger n = big(1);		// value * 3
+	for (int i = 0; i < 20000; ++i) {
+	    x = x.add(CR.valueOf(1)).negate();
+	    n = n.add(big(3)).negate();
+	}
+	check("negations", x, n, big(3));
+    }
+
+    @Test
+    public void shifts() {
+	CR x = new third();
+	int depth = 20000;
+	for (int i = 0; i < depth; ++i) x = x.add(CR.valueOf(1)).shiftRight(1);
+	// 1 - (2/3) 2**-depth
+	BigInteger d = big(3).shiftLeft(depth);
+	check("shifts", x, d.subtract(big(2)), d);
+    }
+
+    @Test
+    public void selections() {
+	CR x = new third();
+	CR negative = new third().negate();
+	int depth = 20000;
+	for (int i = 0; i < depth; ++i) {
+	    x = negative.select(x.add(CR.valueOf(1)), x.add(CR.valueOf(1)));
+	}
+	check("selections", x, big(1 + 3L * depth), big(3));
+    }
+
+    @Test
+    public void sums() {
+	CR x = new third();
+	int depth = 20000;
+	for (int i = 0; i < depth; ++i) {
+	    x = CR.sum(x, CR.valueOf(1), CR.valueOf(2));
+	}
+	check("sums", x, big(1 + 9L * depth), big(3));
+    }
+
+    // (1 + 2**-20/3)**(2*depth), by products and by multiplications.
+    @Test
+    public void products() {
+	CR factor = CR.valueOf(1).add(new third().shiftRight(20));
+	int depth = 500;
+	CR x = factor;
+	CR y = factor;
+	for (int i = 1; i < depth; ++i) {
+	    x = CR.product(x, factor, factor);
+	    y = y.multiply(factor).multiply(factor);
+	}
+	x = x.multiply(factor);
+	y = y.multiply(factor);
+	BigInteger d = big(3).shiftLeft(20);
+	BigInteger n = d.add(big(1)).pow(2*depth);
+	d = d.pow(2*depth);
+	check("products", x, n, d);
+	check("multiplications", y, n, d);
+    }
+
+    // 1/(1 + 1/(1 + ... 1/(1 + 1/3))), a ratio of Fibonacci-like
+    // numbers.
+    @Test
+    public void inverses() {
+	CR x = new third();
+	BigInteger n = big(1);
+	BigInteger d = big(3);
+	for (int i = 0; i < 500; ++i) {
+	    x = CR.valueOf(1).add(x).inverse();
+	    BigInteger next_d = n.add(d);
+	    n = d;
+	    d = next_d;
+	}
+	check("inverses", x, n, d);
+    }
+
+    @Test
+    public void enclosure() {
+	CR x = new third();
+	int depth = 20000;
+	for (int i = 1; i <= depth; ++i) x = x.add(CR.valueOf(i));
+	BigInteger bounds[] = x.enclose(-10);
+	BigInteger value = big(1).add(big(3L * depth * (depth + 1) / 2))
+				 .shiftLeft(10);
+	// lo <= value * 2**10 / 3 <= hi
+	assertTrue(
+		bounds[0].multiply(big(3)).compareTo(value) <= 0
+		&& bounds[1].multiply(big(3)).compareTo(value) >= 0);
+    }
+}
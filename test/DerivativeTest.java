@@ -0,0 +1,143 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_apprs;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// UnaryCRFunction.derivative, by automatic differentiation, and
+// monotoneDerivative, which uses it where it applies.
+public class DerivativeTest {
+    static final int precisions[] = { 10, 0, -1, -100, -1000 };
+
+    interface function {
+	CR at(CR x);
+    }
+
+    static UnaryCRFunction of(function f) {
+	return new UnaryCRFunction() {
+	    public CR execute(CR x) {
+		return f.at(x);
+	    }
+	};
+    }
+
+    static void check(String what, function f, long n, long d,
+		      Reference.fixed_value ref) {
+	UnaryCRFunction deriv = of(f).derivative();
+	assert_apprs(what + "'(" + n + "/" + d + ")",
+		     () -> deriv.execute(CR.valueOf(n).divide(CR.valueOf(d))),
+		     precisions, ref);
+    }
+
+    // (x**3 - 5x)/(x**2 + 1), whose derivative is
+    // (x**4 + 8x**2 - 5)/(x**2 + 1)**2.
+    @Test
+    public void rational() {
+	for (long n : new long[] { -7, 0, 3 }) {
+	    long d = 2;
+	    BigInteger bn = big(n);
+	    BigInteger bd = big(d);
+	    BigInteger n2 = bn.multiply(bn);
+	    BigInteger d2 = bd.multiply(bd);
+	    BigInteger num = n2.multiply(n2).add(big(8).multiply(n2).multiply(d2))
+			     .subtract(big(5).multiply(d2).multiply(d2));
+	    BigInteger den = n2.add(d2).pow(2);
+	    check("rational",
+		  x -> x.multiply(x).multiply(x).subtract(x.multiply(CR.valueOf(5)))
+		       .divide(x.multiply(x).add(CR.valueOf(1))),
+		  n, d, w -> Reference.fixed(num, den, w));
+	}
+    }
+
+    @Test
+    public void transcendental() {
+	check("exp(2x)", x -> x.shiftLeft(1).exp(), 3, 7,
+	      w -> Reference.exp(big(6), big(7), w + 1));
+	check("sin", x -> x.sin(), -5, 3,
+	      w -> Reference.sin_cos(big(-5), big(3), w)[1]);
+	check("cos", x -> x.cos(), 2, 1,
+	      w -> Reference.sin_cos(big(2), big(1), w)[0].negate());
+	check("ln", x -> x.ln(), 7, 3,
+	      w -> Reference.fixed(big(3), big(7), w));
+	check("atan", x -> UnaryCRFunction.atanFunction.execute(x), -4, 3,
+	      w -> Reference.fixed(big(9), big(25), w));
+	check("sqrt", x -> x.sqrt(), 5, 2,
+	      w -> Reference.sqrt(big(2), big(5), w - 1));
+    }
+
+    // A chain much deeper than the Java stack allows for recursion,
+    // x + x + ... + x, with derivative 20001.
+    @Test
+    public void deepChain() {
+	final int depth = 20000;
+	UnaryCRFunction deriv = of(x -> {
+	    CR y = x;
+	    for (int i = 0; i < depth; ++i) {
+		y = y.add(x).shiftLeft(1).negate().shiftRight(1).negate();
+	    }
+	    return y;
+	}).derivative();
+	CR d = deriv.execute(CR.valueOf(3));
+	assertTrue(d.compareTo(CR.valueOf(depth + 1), -10) == 0);
+    }
+
+    // A node of a class defined outside the package.
+    static final class foreign extends CR {
+	final CR op;
+	foreign(CR x) { op = x; }
+	protected BigInteger approximate(int p) {
+	    return op.get_appr(p);
+	}
+    }
+
+    @Test
+    public void foreignNodes() {
+	function f = x -> new foreign(x.multiply(x));
+	try {
+	    of(f).derivative().execute(CR.valueOf(3));
+	    fail("differentiated a foreign node");
+	} catch (UnsupportedOperationException e) {
+	}
+	// monotoneDerivative falls back to finite differences.
+	CR d = of(f).monotoneDerivative(CR.valueOf(1), CR.valueOf(5))
+		    .execute(CR.valueOf(3));
+	assertFalse(d.compareTo(CR.valueOf(6), -40) != 0);
+	// Only the operands whose derivatives are needed must be
+	// differentiable:  the selector of max is not.
+	CR m = of(x -> x.max(x.multiply(x))).derivative().execute(CR.valueOf(3));
+	assertTrue(m.compareTo(CR.valueOf(6), -40) == 0);
+    }
+
+    // The inverse function rule, with the derivative of f computed
+    // automatically:  cbrt'(x) = 1/(3 cbrt(x)**2).
+    @Test
+    public void inverse() {
+	UnaryCRFunction cbrt = of(x -> x.multiply(x).multiply(x))
+				   .inverseMonotone(CR.valueOf(1), CR.valueOf(11));
+	UnaryCRFunction deriv = cbrt.derivative();
+	for (long n : new long[] { 2, 10 }) {
+	    CR c = cbrt.execute(CR.valueOf(n));
+	    CR one = deriv.execute(CR.valueOf(n))
+			  .multiply(c.multiply(c).multiply(CR.valueOf(3)));
+	    for (int p : precisions) {
+		BigInteger difference = one.get_appr(p)
+					   .subtract(CR.valueOf(1).get_appr(p));
+		assertTrue("at " + p, difference.abs().compareTo(big(1)) <= 0);
+	    }
+	}
+	// Second derivatives, through monotoneDerivative:  6x.
+	CR d2 = of(x -> x.multiply(x).multiply(x))
+		    .monotoneDerivative(CR.valueOf(-1), CR.valueOf(11))
+		    .derivative().execute(CR.valueOf(5).shiftRight(1));
+	assertTrue(d2.compareTo(CR.valueOf(15), -100) == 0);
+    }
+}
@@ -0,0 +1,114 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.Test;
+
+// dyadic_CR, the long-based representation of integers and doubles.
+public class DyadicTest {
+    static final long mantissas[] = { 0, 1, -1, 3, -3, 5, 1L << 40,
+				      -(1L << 40) - 1, Long.MAX_VALUE,
+				      Long.MIN_VALUE, Long.MIN_VALUE + 1 };
+
+    // m * 2**e at precision p, computed with BigIntegers as for
+    // an int_CR.
+    static BigInteger expected(long m, int e, int p) {
+	return CR.scale(big(m), e - p);
+    }
+
+    static void check(long m, int e) {
+	CR x = dyadic_CR.normalized(m, e);
+	for (int p = e - 70; p <= e + 70; ++p) {
+	    // A fresh node, so that the approximation is not derived
+	    // from a cached one.
+	    assertEquals(m + " * 2**" + e + " at " + p,
+			 expected(m, e, p),
+			 dyadic_CR.normalized(m, e).get_appr(p));
+	    BigInteger bounds[] = x.enclose(p);
+	    BigInteger scaled = big(m);
+	    int shift = e - p;
+	    // lo * 2**p <= m * 2**e <= hi * 2**p
+	    if (shift >= 0) {
+		scaled = scaled.shiftLeft(shift);
+		assertTrue(bounds[0].compareTo(scaled) <= 0);
+		assertTrue(bounds[1].compareTo(scaled) >= 0);
+	    } else {
+		assertTrue(bounds[0].shiftLeft(-shift).compareTo(scaled) <= 0);
+		assertTrue(bounds[1].shiftLeft(-shift).compareTo(scaled) >= 0);
+	    }
+	    assertTrue(bounds[1].subtract(bounds[0]).compareTo(big(1)) <= 0);
+	}
+    }
+
+    @Test
+    public void approximations() {
+	for (long m : mantissas) {
+	    for (int e : new int[] { 0, 1, -1, 30, -64, -1074, 1000 }) {
+		check(m, e);
+	    }
+	}
+	Random random = new Random(24);
+	for (int i = 0; i < 300; ++i) {
+	    check(random.nextLong() >> random.nextInt(64),
+		  random.nextInt(400) - 200);
+	}
+    }
+
+    @Test
+    public void integers() {
+	for (long n : mantissas) {
+	    for (int p : new int[] { 70, 63, 3, 0, -1, -100 }) {
+		assertEquals(n + " at " + p, new int_CR(big(n)).get_appr(p),
+			     CR.valueOf(n).get_appr(p));
+	    }
+	}
+	assertEquals(big(-7), CR.valueOf(-7).get_appr(0));
+	assertEquals(big(-7).shiftLeft(200), CR.valueOf(-7).get_appr(-200));
+	// Larger values need an int_CR.
+	BigInteger huge = big(1).shiftLeft(64).add(big(1));
+	assertEquals(huge.shiftLeft(5), CR.valueOf(huge).get_appr(-5));
+    }
+
+    // Doubles are represented exactly.
+    @Test
+    public void doubles() {
+	Random random = new Random(7);
+	double ds[] = new double[200];
+	for (int i = 0; i < ds.length; ++i) {
+	    ds[i] = Double.longBitsToDouble(random.nextLong());
+	    if (Double.isNaN(ds[i]) || Double.isInfinite(ds[i])) ds[i] = i;
+	}
+	ds[0] = 0.0;
+	ds[1] = -0.0;
+	ds[2] = Double.MIN_VALUE;
+	ds[3] = -Double.MAX_VALUE;
+	ds[4] = Double.MIN_NORMAL;
+	ds[5] = 0.1;
+	for (double d : ds) {
+	    CR x = CR.valueOf(d);
+	    BigInteger value[] = CR.rational_value(x);
+	    assertNotNull(value);
+	    BigDecimal exact = new BigDecimal(d);
+	    BigDecimal ratio = new BigDecimal(value[0]).divide(
+				   new BigDecimal(value[1]));
+	    assertEquals(String.valueOf(d), 0, exact.compareTo(ratio));
+	    assertEquals(d, x.doubleValue(), 0.0);
+	    // Rounded to nearest, with ties toward +infinity.
+	    assertEquals(exact.multiply(BigDecimal.valueOf(1L << 20))
+			      .add(new BigDecimal("0.5"))
+			      .setScale(0, RoundingMode.FLOOR).toBigInteger(),
+			 CR.valueOf(d).get_appr(-20));
+	}
+    }
+}
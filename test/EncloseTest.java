@@ -0,0 +1,150 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// CR.enclose and encloseDouble:  the bounds must contain the value
+// given by the reference, and should not be much wider than an
+// approximation's error.
+public class EncloseTest {
+    static final int precisions[] = { 5, 0, -1, -50, -500, -3000 };
+    static final int guard = 40;
+
+    interface maker {
+	CR make();
+    }
+
+    // Check the enclosures of fresh nodes from make at each precision,
+    // and that they are at most max_width units wide where p <= 0.
+    static void check(String what, maker make, Reference.fixed_value ref,
+		      int max_width) {
+	for (int p : precisions) {
+	    BigInteger bounds[] = make.make().enclose(p);
+	    BigInteger value = ref.at(-p + guard);
+	    String where = what + " at " + p + ": [" + bounds[0] + ", "
+			   + bounds[1] + "], value " + value + " / 2**"
+			   + guard;
+	    // The reference is off by a few units at -p + guard.
+	    assertTrue(where, bounds[0].shiftLeft(guard)
+				  .compareTo(value.add(big(256))) <= 0);
+	    assertTrue(where, bounds[1].shiftLeft(guard)
+				  .compareTo(value.subtract(big(256))) >= 0);
+	    // At positive precisions, each multiplication magnifies the
+	    // width of its operands' bounds by about 2**p.
+	    if (p <= 0) {
+		assertTrue(where, bounds[1].subtract(bounds[0])
+				      .compareTo(big(max_width)) <= 0);
+	    }
+	}
+    }
+
+    static CR sqrt(long n) {
+	return CR.valueOf(n).sqrt();
+    }
+
+    // sqrt(n)/d, from the reference.
+    static Reference.fixed_value sqrt_ref(long n, long d) {
+	return w -> Reference.sqrt(big(n), big(d * d), w);
+    }
+
+    @Test
+    public void constants() {
+	check("5/7", () -> CR.valueOf(5).divide(CR.valueOf(7)),
+	      w -> Reference.fixed(big(5), big(7), w), 2);
+	check("-3/64", () -> CR.valueOf(-3).shiftRight(6),
+	      w -> Reference.fixed(big(-3), big(64), w), 2);
+	check("1000001", () -> CR.valueOf(1000001),
+	      w -> big(1000001).shiftLeft(w), 2);
+    }
+
+    @Test
+    public void arithmetic() {
+	// (sqrt(8) + sqrt(2)) / 2 - sqrt(2) = sqrt(2) / 2
+	check("sum", () -> sqrt(8).add(sqrt(2)).shiftRight(1).subtract(sqrt(2)),
+	      sqrt_ref(2, 2), 16);
+	// sqrt(2) * sqrt(8) * -sqrt(3) / sqrt(48) = -1
+	check("product",
+	      () -> sqrt(2).multiply(sqrt(8)).multiply(sqrt(3).negate())
+			   .divide(sqrt(48)),
+	      w -> big(-1).shiftLeft(w), 200);
+	// 1/(sqrt(3) - 1) = (sqrt(3) + 1)/2
+	check("inverse", () -> sqrt(3).subtract(CR.valueOf(1)).inverse(),
+	      w -> Reference.sqrt(big(3), big(4), w).add(big(1).shiftLeft(w - 1)),
+	      16);
+	// sqrt(sqrt(16) * sqrt(sqrt(16))) = sqrt(8)
+	check("sqrt", () -> sqrt(16).multiply(sqrt(16).sqrt()).sqrt(),
+	      sqrt_ref(8, 1), 32);
+	check("sum of 5",
+	      () -> CR.sum(new CR[] { sqrt(2), sqrt(2), sqrt(2), sqrt(2),
+				      sqrt(2).negate() }),
+	      sqrt_ref(18, 1), 32);
+	check("product of 4",
+	      () -> CR.product(new CR[] { sqrt(2), sqrt(3), sqrt(6),
+					  CR.valueOf(1).shiftRight(3) }),
+	      w -> big(3).shiftLeft(w).shiftRight(2), 64);
+    }
+
+    @Test
+    public void selections() {
+	check("abs", () -> sqrt(2).subtract(sqrt(3)).abs(),
+	      w -> Reference.sqrt(big(3), big(1), w)
+			    .subtract(Reference.sqrt(big(2), big(1), w)), 16);
+	check("max", () -> sqrt(2).max(sqrt(3).negate()),
+	      sqrt_ref(2, 1), 8);
+	check("min", () -> sqrt(5).min(sqrt(5)),
+	      sqrt_ref(5, 1), 8);
+    }
+
+    // Transcendental functions are evaluated normally, but ln uses
+    // ln(2), a combination of atanh values with integer coefficients,
+    // each of which magnifies the width.
+    @Test
+    public void transcendental() {
+	check("exp(1/3) + ln(7)",
+	      () -> CR.valueOf(1).divide(CR.valueOf(3)).exp()
+			  .add(CR.valueOf(7).ln()),
+	      w -> Reference.exp(big(1), big(3), w)
+			    .add(Reference.ln(big(7), big(1), w)), 256);
+    }
+
+    // Cached approximations of the node are used directly.
+    @Test
+    public void cached() {
+	CR x = sqrt(2).multiply(sqrt(3));
+	x.get_appr(-200);
+	BigInteger bounds[] = x.enclose(-200);
+	assertTrue(bounds[1].subtract(bounds[0]).equals(big(2)));
+    }
+
+    @Test
+    public void doubles() {
+	double bounds[] = sqrt(2).add(sqrt(3)).encloseDouble(-60);
+	double value = Math.sqrt(2) + Math.sqrt(3);
+	assertTrue(bounds[0] < bounds[1]);
+	assertTrue(bounds[0] <= value + Math.ulp(value));
+	assertTrue(bounds[1] >= value - Math.ulp(value));
+	assertTrue(bounds[1] - bounds[0] <= 4 * Math.ulp(value));
+	bounds = CR.valueOf(-3).shiftRight(2000).encloseDouble(-2100);
+	assertTrue(bounds[0] < 0 && bounds[1] >= 0);
+    }
+
+    // A chain deeper than recursion allows:  the sum of 20000 copies
+    // of 1/3.
+    @Test
+    public void deep() {
+	CR third = CR.valueOf(1).divide(sqrt(9));
+	CR x = third;
+	for (int i = 1; i < 20000; ++i) x = x.add(third);
+	BigInteger bounds[] = x.enclose(-100);
+	BigInteger value = Reference.fixed(big(20000), big(3), 100);
+	assertTrue(bounds[0].compareTo(value) <= 0);
+	assertTrue(bounds[1].compareTo(value.add(big(1))) >= 0);
+    }
+}
@@ -0,0 +1,134 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+// The limits imposed by an EvaluationContext.
+public class EvaluationContextTest {
+    interface evaluation {
+	void run();
+    }
+
+    static void assert_aborted(EvaluationAbortedError.Reason reason,
+			       evaluation e) {
+	try {
+	    e.run();
+	    fail("not aborted: expected " + reason);
+	} catch (EvaluationAbortedError error) {
+	    assertEquals(reason, error.getReason());
+	}
+    }
+
+    static CR third() {
+	return CR.valueOf(1).divide(CR.valueOf(3));
+    }
+
+    @Test
+    public void noLimits() {
+	EvaluationContext context = new EvaluationContext();
+	CR x = third().exp();
+	for (int p : new int[] { -10, -100, -2000 }) {
+	    assert_appr("exp(1/3)", x.get_appr(p, context), p,
+			w -> Reference.exp(big(1), big(3), w));
+	}
+    }
+
+    @Test
+    public void cancelled() {
+	EvaluationContext context = new EvaluationContext();
+	context.cancel();
+	assertTrue(context.isCancelled());
+	assert_aborted(EvaluationAbortedError.Reason.CANCELLED,
+		       () -> third().exp().get_appr(-100, context));
+	// Other evaluations of the same node are unaffected.
+	CR x = third().exp();
+	assert_aborted(EvaluationAbortedError.Reason.CANCELLED,
+		       () -> x.get_appr(-100, context));
+	assert_appr("exp(1/3)", x, -100,
+		    w -> Reference.exp(big(1), big(3), w));
+    }
+
+    @Test
+    public void deadline() {
+	// Long enough that it cannot finish in time, and
+	// checked frequently by the binary splitting recursion.
+	EvaluationContext context = new EvaluationContext().setTimeout(20);
+	long start = System.nanoTime();
+	assert_aborted(EvaluationAbortedError.Reason.DEADLINE,
+		       () -> CR.atan_reciprocal(7).get_appr(-3000000, context));
+	assertTrue((System.nanoTime() - start) / 1000000 < 5000);
+    }
+
+    // Very long timeouts mean no deadline, rather than overflowing
+    // into one that has already passed.
+    @Test
+    public void longTimeouts() {
+	for (long millis : new long[] { Long.MAX_VALUE, 10000000000000L,
+					Long.MAX_VALUE / 1000000 + 1,
+					60000 }) {
+	    EvaluationContext context = new EvaluationContext().setTimeout(millis);
+	    assert_appr("sqrt(2) with timeout " + millis,
+			CR.valueOf(2).sqrt().get_appr(-100, context), -100,
+			w -> Reference.sqrt(big(2), big(1), w));
+	}
+	// A long timeout replaces a short one.
+	EvaluationContext context = new EvaluationContext().setTimeout(0)
+				       .setTimeout(Long.MAX_VALUE);
+	assert_appr("sqrt(3)", CR.valueOf(3).sqrt().get_appr(-100, context),
+		    -100, w -> Reference.sqrt(big(3), big(1), w));
+	try {
+	    new EvaluationContext().setTimeout(-1);
+	    fail("negative timeout accepted");
+	} catch (IllegalArgumentException e) {
+	}
+    }
+
+    @Test
+    public void maxPrecision() {
+	EvaluationContext context = new EvaluationContext().setMaxPrecision(120);
+	CR x = third().exp();
+	assert_appr("exp(1/3)", x.get_appr(-100, context), -100,
+		    w -> Reference.exp(big(1), big(3), w));
+	// The operand is needed to more than 200 bits.
+	assert_aborted(EvaluationAbortedError.Reason.PRECISION,
+		       () -> third().exp().get_appr(-200, context));
+	assert_aborted(EvaluationAbortedError.Reason.PRECISION,
+		       () -> x.get_appr(-121, context));
+    }
+
+    // Final approximations, and the larger working values used to
+    // compute them, are both limited.
+    @Test
+    public void maxBits() {
+	EvaluationContext small = new EvaluationContext().setMaxBits(50);
+	assert_aborted(EvaluationAbortedError.Reason.SIZE,
+		       () -> third().get_appr(-100, small));
+	// exp(1/3) at -2000 has 2001 bits, but the bit-burst
+	// evaluation forms binary splitting sums that are larger.
+	EvaluationContext context = new EvaluationContext().setMaxBits(2050);
+	assert_aborted(EvaluationAbortedError.Reason.SIZE,
+		       () -> third().exp().get_appr(-2000, context));
+	// As do the AGM used by ln, and atan.
+	CR x = CR.valueOf(7).sqrt();
+	assert_aborted(EvaluationAbortedError.Reason.SIZE,
+		       () -> x.ln().get_appr(-3000,
+				new EvaluationContext().setMaxBits(3010)));
+	assert_aborted(EvaluationAbortedError.Reason.SIZE,
+		       () -> UnaryCRFunction.atanFunction.execute(third())
+				.get_appr(-3000,
+					  new EvaluationContext().setMaxBits(3010)));
+	// A limit that allows the working values.
+	EvaluationContext large = new EvaluationContext().setMaxBits(20000);
+	assert_appr("exp(1/3)", third().exp().get_appr(-2000, large), -2000,
+		    w -> Reference.exp(big(1), big(3), w));
+    }
+}
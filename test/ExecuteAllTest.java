@@ -0,0 +1,134 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+// UnaryCRFunction.executeAll and executeAllDouble, sequentially and
+// in parallel.
+public class ExecuteAllTest {
+    // The arguments k/8 for -n/2 <= k < n/2.
+    static CR[] arguments(int n) {
+	CR xs[] = new CR[n];
+	for (int i = 0; i < n; ++i) {
+	    xs[i] = CR.valueOf(i - n/2).divide(CR.valueOf(8));
+	}
+	return xs;
+    }
+
+    static void check_cosines(BigInteger result[], int n, int p) {
+	assertEquals(n, result.length);
+	for (int i = 0; i < n; ++i) {
+	    long k = i - n/2;
+	    assert_appr("cos(" + k + "/8)", result[i], p,
+			w -> Reference.sin_cos(big(k), big(8), w)[1]);
+	}
+    }
+
+    @Test
+    public void sequential() {
+	for (int p : new int[] { 4, 0, -50, -700 }) {
+	    check_cosines(UnaryCRFunction.cosFunction.executeAll(
+			      arguments(37), p, null), 37, p);
+	}
+    }
+
+    @Test
+    public void parallel() {
+	ForkJoinPool pool = new ForkJoinPool(3);
+	try {
+	    for (int p : new int[] { 0, -50, -700 }) {
+		check_cosines(UnaryCRFunction.cosFunction.executeAll(
+				  arguments(200), p, pool), 200, p);
+		check_cosines(UnaryCRFunction.cosFunction.executeAll(
+				  arguments(200), p), 200, p);
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    // With a pool, the argument of largest magnitude is evaluated
+    // before the others, which then find the constants it needed
+    // cached.
+    @Test
+    public void largestFirst() {
+	ForkJoinPool pool = new ForkJoinPool(3);
+	try {
+	    CR xs[] = arguments(50);
+	    xs[37] = CR.valueOf(1000).sqrt().negate();
+	    AtomicInteger first = new AtomicInteger(-1);
+	    AtomicInteger calls = new AtomicInteger();
+	    UnaryCRFunction.for_each_argument(xs, pool, i -> {
+		first.compareAndSet(-1, i);
+		calls.incrementAndGet();
+	    });
+	    assertEquals(37, first.get());
+	    assertEquals(50, calls.get());
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    @Test
+    public void smallBatches() {
+	assertEquals(0, UnaryCRFunction.cosFunction.executeAll(
+			    new CR[0], -10).length);
+	check_cosines(UnaryCRFunction.cosFunction.executeAll(
+			  arguments(1), -100), 1, -100);
+	check_cosines(UnaryCRFunction.cosFunction.executeAll(
+			  arguments(2), -100), 2, -100);
+    }
+
+    @Test
+    public void doubles() {
+	CR xs[] = arguments(100);
+	double result[] = UnaryCRFunction.expFunction.executeAllDouble(xs);
+	double sequential[] =
+	    UnaryCRFunction.expFunction.executeAllDouble(xs, null);
+	for (int i = 0; i < xs.length; ++i) {
+	    double expected = Math.exp((i - 50) / 8.0);
+	    assertTrue(i + ": " + result[i],
+		       Math.abs(result[i] - expected)
+			   <= 2 * Math.ulp(expected));
+	    assertEquals(result[i], sequential[i], 0.0);
+	}
+    }
+
+    // Each task is evaluated in the caller's context, and errors
+    // are passed on to the caller.
+    @Test
+    public void context() {
+	EvaluationContext context = new EvaluationContext();
+	context.cancel();
+	EvaluationContext previous = EvaluationContext.current.get();
+	EvaluationContext.current.set(context);
+	try {
+	    UnaryCRFunction.cosFunction.executeAll(arguments(100), -20);
+	    fail("not cancelled");
+	} catch (EvaluationAbortedError e) {
+	    assertEquals(EvaluationAbortedError.Reason.CANCELLED, e.getReason());
+	} finally {
+	    EvaluationContext.current.set(previous);
+	}
+	CR xs[] = new CR[100];
+	for (int i = 0; i < xs.length; ++i) xs[i] = CR.valueOf(i * i);
+	xs[70] = CR.valueOf(-1);
+	try {
+	    UnaryCRFunction.sqrtFunction.executeAll(xs, -20);
+	    fail("sqrt(-1) evaluated");
+	} catch (ArithmeticException e) {
+	}
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.assert_apprs;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// The exponential function:  reduction by multiples of ln(2), the
+// Taylor series below prescaled_exp_CR.bit_burst_min_bits, and the
+// bit-burst algorithm above it.
+public class ExpTest {
+    static final int precisions[] = { 10, 0, -1, -100, -999, -1000, -5000,
+				      -20000 };
+
+    // exp(n/d), for various rationals n/d, built so that construction
+    // cannot fold the argument into a constant.
+    static CR exp_of(long n, long d) {
+	return CR.valueOf(n).multiply(CR.valueOf(d).sqrt().multiply(
+				CR.valueOf(d).sqrt()).inverse()).exp();
+    }
+
+    static void check(long n, long d) {
+	assert_apprs("exp(" + n + "/" + d + ")", () -> exp_of(n, d), precisions,
+		     w -> Reference.exp(big(n), big(d), w));
+    }
+
+    @Test
+    public void smallArguments() {
+	// No reduction:  abs(x) < ln(2)/2.
+	check(1, 3);
+	check(-1, 3);
+	check(1, 1000);
+	check(-7, 29);
+    }
+
+    @Test
+    public void reducedArguments() {
+	check(7, 5);
+	check(-7, 5);
+	check(201, 2);
+	check(-201, 2);
+	check(1000003, 1000);
+    }
+
+    // Refining one node through the precisions, so that later
+    // evaluations reuse cached operands.
+    @Test
+    public void refinement() {
+	CR x = exp_of(-13, 7);
+	for (int p : precisions) {
+	    assert_appr("exp(-13/7)", x, p,
+			w -> Reference.exp(big(-13), big(7), w));
+	}
+    }
+
+    // exp(+-20000.5), with msd +-28855.
+    @Test
+    public void largeArguments() {
+	CR big_exp = exp_of(40001, 2);
+	CR small_exp = exp_of(-40001, 2);
+	int ps[] = { 0, -100, -2000 };
+	for (int p : ps) {
+	    assert_appr("exp(20000.5)", big_exp, p,
+			w -> Reference.exp(big(40001), big(2), w));
+	    assert_appr("exp(-20000.5)", small_exp, p - 28900,
+			w -> Reference.exp(big(-40001), big(2), w));
+	}
+	assertEquals(big(0), small_exp.get_appr(-28000));
+    }
+
+    // Arguments whose exponentials are far too small or too large
+    // for the precisions check_prec allows.
+    @Test
+    public void extremeArguments() {
+	assertEquals(big(0), CR.valueOf(-40000000).exp().get_appr(-10));
+	assertEquals(big(0), CR.valueOf(-40000000).exp().get_appr(-1000));
+	CR tiny = CR.valueOf(-1000000000).exp();
+	assertTrue(tiny instanceof exp_underflow_CR);
+	assertEquals(big(0), tiny.get_appr(-100000));
+	assertEquals(big(0), CR.valueOf(-1).shiftLeft(1000).exp().get_appr(0));
+	// exp(40000000) has msd 57707801.
+	assertEquals(57707801, CR.valueOf(40000000).exp().msd(57707000));
+	try {
+	    CR.valueOf(1000000000).exp();
+	    fail("exp(10**9) is representable");
+	} catch (PrecisionOverflowError e) {
+	}
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+// UnaryCRFunction.inverseMonotone, with and without a derivative for
+// Newton refinement.
+public class InverseMonotoneTest {
+    static final int precisions[] = { 0, -1, -20, -100, -500, -2000 };
+
+    // x**3, counting evaluations.
+    static final class cube extends UnaryCRFunction {
+	final AtomicInteger calls = new AtomicInteger();
+	public CR execute(CR x) {
+	    calls.incrementAndGet();
+	    return x.multiply(x).multiply(x);
+	}
+    }
+
+    static final UnaryCRFunction three_squares = new UnaryCRFunction() {
+	public CR execute(CR x) {
+	    return x.multiply(x).multiply(CR.valueOf(3));
+	}
+    };
+
+    // floor(cbrt(n)), by Newton iteration.
+    static BigInteger icbrt(BigInteger n) {
+	BigInteger x = big(1).shiftLeft(n.bitLength()/3 + 1);
+	for (;;) {
+	    BigInteger y = x.shiftLeft(1).add(n.divide(x.multiply(x)))
+			    .divide(big(3));
+	    if (y.compareTo(x) >= 0) return x;
+	    x = y;
+	}
+    }
+
+    static BigInteger cbrt(long n, int w) {
+	return icbrt(big(n).shiftLeft(3*w));
+    }
+
+    static void check_cube_root(UnaryCRFunction root, String what) {
+	for (long n : new long[] { 2, 5, 999 }) {
+	    CR x = root.execute(CR.valueOf(n));
+	    for (int p : precisions) {
+		assert_appr(what + "(" + n + ")", x, p, w -> cbrt(n, w));
+	    }
+	}
+    }
+
+    @Test
+    public void cubeRoot() {
+	CR low = CR.valueOf(1);
+	CR high = CR.valueOf(11);
+	check_cube_root(new cube().inverseMonotone(low, high), "cbrt");
+	check_cube_root(new cube().inverseMonotone(low, high, three_squares),
+			"newton cbrt");
+    }
+
+    // A derivative that is off by a factor of 3 slows convergence,
+    // but the results are still checked.
+    @Test
+    public void inaccurateDerivative() {
+	UnaryCRFunction squares = new UnaryCRFunction() {
+	    public CR execute(CR x) {
+		return x.multiply(x);
+	    }
+	};
+	check_cube_root(new cube().inverseMonotone(CR.valueOf(1), CR.valueOf(11),
+						   squares),
+			"cbrt with wrong derivative");
+    }
+
+    // exp is increasing; its inverse is ln.
+    @Test
+    public void inverseOfExp() {
+	UnaryCRFunction ln = UnaryCRFunction.expFunction.inverseMonotone(
+		CR.valueOf(-3), CR.valueOf(4), UnaryCRFunction.expFunction);
+	for (long n : new long[] { 1, 7, 40 }) {
+	    CR x = ln.execute(CR.valueOf(n).divide(CR.valueOf(3)));
+	    for (int p : precisions) {
+		assert_appr("ln(" + n + "/3)", x, p,
+			    w -> Reference.ln(big(n), big(3), w));
+	    }
+	}
+    }
+
+    // 1/x is decreasing, and its own inverse.
+    @Test
+    public void decreasing() {
+	UnaryCRFunction inverse = new UnaryCRFunction() {
+	    public CR execute(CR x) {
+		return x.inverse();
+	    }
+	};
+	UnaryCRFunction derivative = new UnaryCRFunction() {
+	    public CR execute(CR x) {
+		return x.multiply(x).inverse().negate();
+	    }
+	};
+	UnaryCRFunction f = inverse.inverseMonotone(
+		CR.valueOf(1).shiftRight(2), CR.valueOf(4), derivative);
+	for (long n : new long[] { 3, 7 }) {
+	    CR x = f.execute(CR.valueOf(n).shiftRight(1));
+	    for (int p : precisions) {
+		assert_appr("2/" + n, x, p,
+			    w -> Reference.fixed(big(2), big(n), w));
+	    }
+	}
+    }
+
+    // With the derivative, each doubling of the precision needs only
+    // a few evaluations of the function:  one at the Newton estimate,
+    // and two to check it.
+    @Test
+    public void fewEvaluations() {
+	cube f = new cube();
+	CR x = f.inverseMonotone(CR.valueOf(1), CR.valueOf(11), three_squares)
+		.execute(CR.valueOf(2));
+	x.get_appr(-10);
+	for (int p = -20; p >= -10240; p *= 2) {
+	    int before = f.calls.get();
+	    assert_appr("cbrt(2)", x, p, w -> cbrt(2, w));
+	    int calls = f.calls.get() - before;
+	    assertTrue(calls + " evaluations at " + p, calls <= 5);
+	}
+    }
+}
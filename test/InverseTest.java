@@ -0,0 +1,71 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+
+// Reciprocals, which above inv_CR.newton_min_bits are refined from
+// the previous approximation by Newton iteration.
+public class InverseTest {
+    // Each precision is less than 4 times the previous one, so that
+    // the Newton path is taken from -2000 on.
+    static final int precisions[] = { -10, -100, -600, -2000, -5000, -12000,
+				      -30000 };
+
+    @Test
+    public void refinedReciprocal() {
+	CR inv = CR.valueOf(3).sqrt().inverse();
+	CR neg_inv = CR.valueOf(3).sqrt().negate().inverse();
+	for (int p : precisions) {
+	    assert_appr("1/sqrt(3)", inv, p,
+			w -> Reference.sqrt(big(1), big(3), w));
+	    assert_appr("-1/sqrt(3)", neg_inv, p,
+			w -> Reference.sqrt(big(1), big(3), w).negate());
+	}
+    }
+
+    @Test
+    public void largeAndSmallOperands() {
+	// 1/(2**100 sqrt(5)) and 1/(2**-100 sqrt(5))
+	CR small = CR.valueOf(5).sqrt().shiftLeft(100).inverse();
+	CR large = CR.valueOf(5).sqrt().shiftRight(100).inverse();
+	for (int p : precisions) {
+	    assert_appr("2**-100/sqrt(5)", small, p,
+			w -> Reference.sqrt(big(1), big(5), w + 100)
+				      .shiftRight(200));
+	    assert_appr("2**100/sqrt(5)", large, p,
+			w -> Reference.sqrt(big(1), big(5), w + 100));
+	}
+    }
+
+    // newton_reciprocal against exact division, from seeds with
+    // various errors.
+    @Test
+    public void newtonReciprocal() {
+	Random random = new Random(3);
+	for (int i = 0; i < 300; ++i) {
+	    int d_bits = 2 + random.nextInt(3000);
+	    BigInteger d = new BigInteger(d_bits, random).setBit(d_bits - 1);
+	    int k = d_bits + 1 + random.nextInt(4000);
+	    // A seed with about 40 good bits:  2**y_k/d, perturbed.
+	    int y_k = d_bits + 40;
+	    BigInteger y = big(1).shiftLeft(y_k).divide(d)
+				 .add(big(random.nextInt(64) - 32));
+	    if (y_k >= k) continue;
+	    BigInteger result = inv_CR.newton_reciprocal(d, k, y, y_k, 30);
+	    // Error < 1.4, i.e. abs(result * d - 2**k) < 1.4 d.
+	    BigInteger error = result.multiply(d).subtract(big(1).shiftLeft(k))
+				     .abs().multiply(big(10));
+	    assertTrue("d = " + d + ", k = " + k,
+		       error.compareTo(d.multiply(big(14))) < 0);
+	}
+    }
+}
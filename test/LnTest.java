@@ -0,0 +1,92 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.assert_apprs;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// The natural logarithm, evaluated by the series below
+// CR.agm_ln_threshold bits, and by the arithmetic-geometric mean
+// from there on.
+public class LnTest {
+    static final int precisions[] = { 10, 0, -1, -100, -1999, -2000, -2001,
+				      -5000, -20000 };
+
+    // ln(n/d), with an argument that construction cannot fold into
+    // a constant.
+    static CR ln_of(long n, long d) {
+	return CR.valueOf(n).multiply(CR.valueOf(d).sqrt().multiply(
+				CR.valueOf(d).sqrt()).inverse()).ln();
+    }
+
+    static void check(long n, long d) {
+	assert_apprs("ln(" + n + "/" + d + ")", () -> ln_of(n, d), precisions,
+		     w -> Reference.ln(big(n), big(d), w));
+    }
+
+    @Test
+    public void agmRange() {
+	// Arguments that agm_ln_CR handles directly.
+	check(7, 5);
+	check(1, 2);
+	check(3, 2);
+	check(11, 10);
+    }
+
+    @Test
+    public void reducedArguments() {
+	// By inversion, square roots, and scaling by powers of 2.
+	check(1, 1000);
+	check(29, 10);
+	check(1000000, 1);
+	check(3, 1L << 40);
+    }
+
+    // One node refined through increasing precisions, and then
+    // evaluated again below the threshold.
+    @Test
+    public void refinement() {
+	CR x = ln_of(13, 7);
+	for (int p : precisions) {
+	    assert_appr("ln(13/7)", x, p,
+			w -> Reference.ln(big(13), big(7), w));
+	}
+	CR y = ln_of(13, 7);
+	y.get_appr(-4000);
+	assert_appr("ln(13/7)", y, -1500,
+		    w -> Reference.ln(big(13), big(7), w));
+    }
+
+    // With a lower threshold, the AGM is used at lower precisions,
+    // where its error analysis has less slack.
+    @Test
+    public void lowThreshold() {
+	int saved = CR.agm_ln_threshold;
+	CR.agm_ln_threshold = 20;
+	try {
+	    int ps[] = { -20, -21, -30, -64, -100, -500 };
+	    assert_apprs("ln(7/5)", () -> ln_of(7, 5), ps,
+			 w -> Reference.ln(big(7), big(5), w));
+	    assert_apprs("ln(1/2)", () -> ln_of(1, 2), ps,
+			 w -> Reference.ln(big(1), big(2), w));
+	} finally {
+	    CR.agm_ln_threshold = saved;
+	}
+    }
+
+    // exp(ln(x)) = x
+    @Test
+    public void inverseOfExp() {
+	CR x = CR.valueOf(5).sqrt();
+	CR y = x.ln().exp();
+	BigInteger difference = y.get_appr(-3000).subtract(x.get_appr(-3000));
+	assertTrue(difference.abs().compareTo(big(2)) < 0);
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Sums and products whose operands are evaluated in CR.parallel_pool.
+public class ParallelEvaluationTest {
+    ForkJoinPool saved_pool;
+    int saved_threshold;
+
+    @Before
+    public void start_pool() {
+	saved_pool = CR.parallel_pool;
+	saved_threshold = CR.parallel_threshold;
+	CR.parallel_pool = new ForkJoinPool(4);
+	CR.parallel_threshold = 100;
+    }
+
+    @After
+    public void stop_pool() {
+	ForkJoinPool pool = CR.parallel_pool;
+	CR.parallel_pool = saved_pool;
+	CR.parallel_threshold = saved_threshold;
+	pool.shutdown();
+    }
+
+    // 1/3, recording whether it was evaluated in a pool thread, and
+    // in which context.
+    static final class third extends CR {
+	volatile boolean in_pool;
+	volatile EvaluationContext context;
+	protected BigInteger approximate(int p) {
+	    if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+		in_pool = true;
+	    }
+	    context = EvaluationContext.current.get();
+	    if (p >= 0) return big0;
+	    return big1.shiftLeft(1 - p).add(big(3)).divide(big(6));
+	}
+    }
+
+    // A balanced tree of sums and products of square roots and
+    // reciprocals, with no shared subexpressions, and so no
+    // dependence on evaluation order.
+    static CR tree(int depth, int n) {
+	if (depth == 0) {
+	    CR leaf = CR.valueOf(n + 2).sqrt();
+	    return (n % 3 == 0)? leaf.inverse() : leaf;
+	}
+	CR left = tree(depth - 1, 2*n);
+	CR right = tree(depth - 1, 2*n + 1);
+	return (depth % 2 == 0)? left.add(right) : left.multiply(right);
+    }
+
+    @Test
+    public void sameAsSequential() {
+	int ps[] = { -50, -150, -1000, -4000 };
+	for (int p : ps) {
+	    BigInteger parallel = tree(6, 1).get_appr(p);
+	    ForkJoinPool pool = CR.parallel_pool;
+	    CR.parallel_pool = null;
+	    BigInteger sequential;
+	    try {
+		sequential = tree(6, 1).get_appr(p);
+	    } finally {
+		CR.parallel_pool = pool;
+	    }
+	    assertEquals("at " + p, sequential, parallel);
+	}
+    }
+
+    @Test
+    public void againstReference() {
+	CR x = CR.valueOf(2).sqrt();
+	CR y = CR.valueOf(3).sqrt();
+	int ps[] = { -10, -200, -1000, -3000 };
+	for (int p : ps) {
+	    assert_appr("sqrt(2) + sqrt(3)", x.add(y), p,
+			w -> Reference.sqrt(big(2), big(1), w)
+				      .add(Reference.sqrt(big(3), big(1), w)));
+	    assert_appr("sqrt(2) * sqrt(3)", x.multiply(y), p,
+			w -> Reference.sqrt(big(6), big(1), w));
+	}
+    }
+
+    @Test
+    public void usesPool() {
+	third x = new third();
+	third y = new third();
+	CR.parallel_threshold = 100;
+	assert_appr("2/3", x.add(y), -500,
+		    w -> Reference.fixed(big(2), big(3), w));
+	assertTrue(x.in_pool || y.in_pool);
+	third a = new third();
+	third b = new third();
+	CR.parallel_threshold = 1000;
+	a.add(b).get_appr(-500);
+	assertTrue(!a.in_pool && !b.in_pool);
+    }
+
+    // Operands evaluated in the pool observe the caller's context.
+    @Test
+    public void contextPropagates() {
+	third x = new third();
+	third y = new third();
+	EvaluationContext context = new EvaluationContext();
+	x.add(y).get_appr(-500, context);
+	assertTrue(x.in_pool || y.in_pool);
+	assertTrue(x.context == context && y.context == context);
+	// The sum itself is within the limit, but its operands are not.
+	EvaluationContext limited = new EvaluationContext().setMaxPrecision(1001);
+	try {
+	    tree(4, 1).get_appr(-1000, limited);
+	    fail("no precision limit");
+	} catch (EvaluationAbortedError e) {
+	    assertEquals(EvaluationAbortedError.Reason.PRECISION, e.getReason());
+	}
+	EvaluationContext cancelled = new EvaluationContext();
+	cancelled.cancel();
+	try {
+	    tree(4, 1).get_appr(-1000, cancelled);
+	    fail("not cancelled");
+	} catch (EvaluationAbortedError e) {
+	    assertEquals(EvaluationAbortedError.Reason.CANCELLED, e.getReason());
+	}
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// CR.product, which builds a single prod_CR node.
+public class ProductTest {
+    static final int precisions[] = { 10, 0, -1, -50, -300, -2000 };
+
+    static BigInteger factorial(int n) {
+	BigInteger result = big(1);
+	for (int k = 2; k <= n; ++k) result = result.multiply(big(k));
+	return result;
+    }
+
+    // sqrt(1) sqrt(2) ... sqrt(n) = sqrt(n!)
+    @Test
+    public void squareRoots() {
+	int n = 60;
+	CR factors[] = new CR[n];
+	for (int k = 1; k <= n; ++k) factors[k - 1] = CR.valueOf(k).sqrt();
+	CR product = CR.product(factors);
+	assertTrue(product instanceof prod_CR);
+	for (int p : precisions) {
+	    assert_appr("sqrt(60!)", product, p,
+			w -> Reference.sqrt(factorial(n), big(1), w));
+	}
+    }
+
+    // Factors of very different magnitudes and signs:
+    // the product over k = 1 ... 40 of -sqrt(3) * 2**(k - 25),
+    // i.e. 3**20 * 2**-180.
+    @Test
+    public void mixedMagnitudes() {
+	CR root3 = CR.valueOf(3).sqrt();
+	List<CR> factors = new ArrayList<CR>();
+	for (int k = 1; k <= 40; ++k) factors.add(root3.negate().shiftLeft(k - 25));
+	CR product = CR.product(factors);
+	for (int p : precisions) {
+	    assert_appr("3**20 * 2**-180", product, p,
+			w -> Reference.fixed(big(3).pow(20),
+					     big(1).shiftLeft(180), w));
+	}
+    }
+
+    // A factor that is tiny, or exactly zero, makes the product
+    // negligible without evaluating the others precisely.
+    @Test
+    public void smallFactors() {
+	CR root2 = CR.valueOf(2).sqrt();
+	CR tiny = root2.shiftRight(3000);
+	CR product = CR.product(root2, tiny, root2, root2);
+	for (int p : precisions) {
+	    // 4 * 2**-3000
+	    assertEquals(big(0), product.get_appr(p));
+	}
+	assert_appr("4 * 2**-3000", product, -3010,
+		    w -> big(4).shiftLeft(w).shiftRight(3000));
+	CR zero = root2.subtract(root2);
+	assertEquals(big(0), CR.product(root2, zero, root2).get_appr(-500));
+    }
+
+    // The product agrees with multiplying one factor at a time.
+    @Test
+    public void sameAsMultiplications() {
+	CR factors[] = new CR[30];
+	CR chained = null;
+	for (int k = 0; k < factors.length; ++k) {
+	    factors[k] = CR.valueOf(k + 2).ln();
+	    if (k % 4 == 1) factors[k] = factors[k].negate();
+	    chained = (chained == null)? factors[k] : chained.multiply(factors[k]);
+	}
+	CR product = CR.product(factors);
+	for (int p : precisions) {
+	    BigInteger difference =
+		product.get_appr(p).subtract(chained.get_appr(p));
+	    assertTrue("at " + p, difference.abs().compareTo(big(1)) <= 0);
+	}
+    }
+
+    @Test
+    public void fewFactors() {
+	CR x = CR.valueOf(3).sqrt();
+	assertEquals(big(1).shiftLeft(100), CR.product().get_appr(-100));
+	assertTrue(CR.product(x) == x);
+	assert_appr("sqrt(3) sqrt(3) sqrt(3)", CR.product(x, x, x), -100,
+		    w -> Reference.sqrt(big(27), big(1), w));
+    }
+}
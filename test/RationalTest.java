@@ -0,0 +1,126 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+
+// rational_CR, and the exact arithmetic on rational constants.
+public class RationalTest {
+    static final int precisions[] = { 30, 3, 1, 0, -1, -2, -64, -65, -300 };
+
+    // Assert that appr * 2**p is within 1/2 of n/d, d > 0, i.e. that
+    // abs(2 (appr * d * 2**p - n)) <= d * 2**p, scaled to integers.
+    static void assert_rounded(String what, BigInteger appr, int p,
+			       BigInteger n, BigInteger d) {
+	BigInteger scaled_appr = appr.multiply(d);
+	BigInteger scaled_n = n;
+	BigInteger scaled_half = d;
+	if (p >= 0) {
+	    scaled_appr = scaled_appr.shiftLeft(p);
+	    scaled_half = d.shiftLeft(p);
+	} else {
+	    scaled_n = n.shiftLeft(-p);
+	}
+	BigInteger error = scaled_appr.subtract(scaled_n).shiftLeft(1).abs();
+	assertTrue(what + " at " + p + ": " + appr,
+		   error.compareTo(scaled_half) <= 0);
+    }
+
+    static void check(CR x, BigInteger n, BigInteger d) {
+	for (int p : precisions) {
+	    assert_rounded(n + "/" + d, x.get_appr(p), p, n, d);
+	}
+	BigInteger value[] = CR.rational_value(x);
+	assertNotNull(n + "/" + d, value);
+	// Compare as fractions.
+	assertEquals(n + "/" + d, n.multiply(value[1]), d.multiply(value[0]));
+	assertTrue(value[1].signum() > 0);
+	assertEquals(big(1), value[0].gcd(value[1]));
+    }
+
+    @Test
+    public void approximations() {
+	Random random = new Random(23);
+	for (int i = 0; i < 200; ++i) {
+	    BigInteger n = new BigInteger(1 + random.nextInt(100), random);
+	    if (random.nextBoolean()) n = n.negate();
+	    BigInteger d = new BigInteger(1 + random.nextInt(100), random)
+			       .add(big(1));
+	    check(rational_CR.reduced(n, d), n, d);
+	}
+	// Halves round up, as in scale.
+	check(rational_CR.reduced(big(-5), big(2)), big(-5), big(2));
+	assertEquals(big(-2), rational_CR.reduced(big(-5), big(2)).get_appr(0));
+	assertEquals(big(3), rational_CR.reduced(big(5), big(2)).get_appr(0));
+    }
+
+    @Test
+    public void arithmetic() {
+	Random random = new Random(5);
+	for (int i = 0; i < 200; ++i) {
+	    long n1 = random.nextInt(20001) - 10000;
+	    long d1 = random.nextInt(999) + 1;
+	    long n2 = random.nextInt(20001) - 10000;
+	    long d2 = random.nextInt(999) + 1;
+	    CR x = CR.valueOf(n1).divide(CR.valueOf(d1));
+	    CR y = CR.valueOf(n2).divide(CR.valueOf(d2));
+	    BigInteger bn1 = big(n1), bd1 = big(d1), bn2 = big(n2), bd2 = big(d2);
+	    check(x.add(y), bn1.multiply(bd2).add(bn2.multiply(bd1)),
+		  bd1.multiply(bd2));
+	    check(x.subtract(y), bn1.multiply(bd2).subtract(bn2.multiply(bd1)),
+		  bd1.multiply(bd2));
+	    check(x.multiply(y), bn1.multiply(bn2), bd1.multiply(bd2));
+	    check(x.negate().shiftLeft(3), bn1.negate().shiftLeft(3), bd1);
+	    if (n2 != 0) {
+		BigInteger n = bn1.multiply(bd2);
+		BigInteger d = bd1.multiply(bn2);
+		if (n2 < 0) {
+		    n = n.negate();
+		    d = d.negate();
+		}
+		check(x.divide(y), n, d);
+		check(y.inverse(), n2 < 0? bd2.negate() : bd2, big(n2).abs());
+	    }
+	}
+    }
+
+    @Test
+    public void decimalStrings() {
+	check(CR.valueOf("0.1", 10), big(1), big(10));
+	check(CR.valueOf(" -12.375 ", 10), big(-99), big(8));
+	check(CR.valueOf("3.14159265358979323846264338327950288", 10),
+	      new BigInteger("314159265358979323846264338327950288"),
+	      big(10).pow(35));
+	check(CR.valueOf("ff.8", 16), big(511), big(2));
+	check(CR.valueOf("-0.0", 10), big(0), big(1));
+	assertEquals("0.10000", CR.valueOf("0.1", 10).toString(5));
+	assertEquals("-2.33333", CR.valueOf("-7", 10)
+				     .divide(CR.valueOf("3.0", 10))
+				     .toString(5));
+    }
+
+    @Test
+    public void comparisons() {
+	CR third = CR.valueOf(1).divide(CR.valueOf(3));
+	CR close = CR.valueOf("0.3333333333333333333333333", 10);
+	// Indeterminate at -20, unless already decided by the caches.
+	assertEquals(0, third.compareTo(close, -20));
+	assertEquals(1, third.compareTo(close));
+	assertEquals(-1, close.subtract(third).signum());
+	// Floor and ceiling, for a node with nothing cached.
+	BigInteger bounds[] = CR.valueOf(1).divide(CR.valueOf(3)).enclose(-100);
+	BigInteger scaled = big(1).shiftLeft(100);
+	assertTrue(bounds[0].multiply(big(3)).compareTo(scaled) <= 0);
+	assertTrue(bounds[1].multiply(big(3)).compareTo(scaled) >= 0);
+	assertTrue(bounds[1].subtract(bounds[0]).compareTo(big(1)) <= 0);
+    }
+}
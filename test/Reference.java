@@ -0,0 +1,209 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+// Reference values for the tests, computed independently of CR by
+// straightforward fixed point arithmetic:  Taylor series after
+// repeated argument halving, Machin's formula for PI, and the atanh
+// series for ln.  Slow, but simple enough to be obviously right.
+// Each function returns its value times 2**w, with an error of a few
+// units, for rational arguments n/d, d > 0.
+final class Reference {
+    private Reference() {}
+
+    // Extra fraction bits carried internally.
+    static final int guard = 40;
+
+    // Something that can compute a value scaled by 2**w.
+    interface fixed_value {
+	BigInteger at(int w);
+    }
+
+    static BigInteger big(long n) {
+	return BigInteger.valueOf(n);
+    }
+
+    // floor(n/d * 2**w), w >= 0.
+    static BigInteger fixed(BigInteger n, BigInteger d, int w) {
+	BigInteger qr[] = n.shiftLeft(w).divideAndRemainder(d);
+	if (qr[1].signum() < 0) return qr[0].subtract(BigInteger.ONE);
+	return qr[0];
+    }
+
+    // floor(sqrt(n)), n >= 0, by Newton iteration.
+    static BigInteger isqrt(BigInteger n) {
+	if (n.signum() == 0) return n;
+	BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1)/2);
+	for (;;) {
+	    BigInteger y = x.add(n.divide(x)).shiftRight(1);
+	    if (y.compareTo(x) >= 0) return x;
+	    x = y;
+	}
+    }
+
+    static BigInteger sqrt(BigInteger n, BigInteger d, int w) {
+	return isqrt(fixed(n, d, 2*w));
+    }
+
+    // Sum of x**k/k!, for fixed point x at wg, abs(x) < 1.
+    static BigInteger exp_series(BigInteger x, int wg) {
+	BigInteger term = BigInteger.ONE.shiftLeft(wg);
+	BigInteger sum = term;
+	for (int k = 1; term.signum() != 0; ++k) {
+	    term = term.multiply(x).shiftRight(wg).divide(big(k));
+	    sum = sum.add(term);
+	}
+	return sum;
+    }
+
+    static BigInteger exp(BigInteger n, BigInteger d, int w) {
+	// The errors grow with the result, which is < 2**(2x + 2),
+	// so carry that many extra bits.
+	int extra = (n.signum() > 0)? 2*n.divide(d).intValue() + 2 : 0;
+	w += extra;
+	// exp(x) = exp(x/2**h)**(2**h), with abs(x/2**h) < 2**-8.
+	int h = Math.max(0, n.bitLength() - d.bitLength() + 9);
+	int wg = w + guard + h + (n.bitLength() - d.bitLength());
+	BigInteger sum = exp_series(fixed(n, d.shiftLeft(h), wg), wg);
+	for (int i = 0; i < h; ++i) sum = sum.multiply(sum).shiftRight(wg);
+	return sum.shiftRight(wg - w + extra);
+    }
+
+    // atanh(t), for fixed point t at wg, abs(t) <= 1/3.
+    static BigInteger atanh_series(BigInteger t, int wg) {
+	if (t.signum() < 0) return atanh_series(t.negate(), wg).negate();
+	BigInteger t2 = t.multiply(t).shiftRight(wg);
+	BigInteger power = t;
+	BigInteger sum = BigInteger.ZERO;
+	for (int j = 0; power.signum() != 0; ++j) {
+	    sum = sum.add(power.divide(big(2*j + 1)));
+	    power = power.multiply(t2).shiftRight(wg);
+	}
+	return sum;
+    }
+
+    static BigInteger ln2(int w) {
+	int wg = w + guard;
+	return atanh_series(fixed(BigInteger.ONE, big(3), wg), wg)
+		.shiftRight(guard - 1);
+    }
+
+    // ln(n/d), n/d > 0.  ln(m) = 2 atanh((m-1)/(m+1)), for
+    // m = n/d * 2**-k in [1/2, 2].
+    static BigInteger ln(BigInteger n, BigInteger d, int w) {
+	int k = n.bitLength() - d.bitLength();
+	if (k > 0) d = d.shiftLeft(k); else n = n.shiftLeft(-k);
+	int wg = w + guard + 8;
+	BigInteger t = fixed(n.subtract(d), n.add(d), wg);
+	BigInteger result = atanh_series(t, wg).shiftLeft(1)
+				.add(ln2(wg).multiply(big(k)));
+	return result.shiftRight(wg - w);
+    }
+
+    // atan(1/m) * 2**wg, by its Taylor series.
+    static BigInteger atan_inverse(int m, int wg) {
+	BigInteger m2 = big((long)m * m);
+	BigInteger term = BigInteger.ONE.shiftLeft(wg).divide(big(m));
+	BigInteger sum = BigInteger.ZERO;
+	for (int j = 0; term.signum() != 0; ++j) {
+	    BigInteger t = term.divide(big(2*j + 1));
+	    sum = (j % 2 == 0)? sum.add(t) : sum.subtract(t);
+	    term = term.divide(m2);
+	}
+	return sum;
+    }
+
+    // PI = 16 atan(1/5) - 4 atan(1/239).
+    static BigInteger pi(int w) {
+	int wg = w + guard;
+	return atan_inverse(5, wg).shiftLeft(4)
+		.subtract(atan_inverse(239, wg).shiftLeft(2))
+		.shiftRight(guard);
+    }
+
+    static BigInteger atan(BigInteger n, BigInteger d, int w) {
+	if (n.signum() < 0) return atan(n.negate(), d, w).negate();
+	if (n.compareTo(d) > 0) {
+	    // atan(x) = PI/2 - atan(1/x).
+	    BigInteger half_pi = pi(w + 8).shiftRight(1);
+	    return half_pi.subtract(atan(d, n, w + 8)).shiftRight(8);
+	}
+	int wg = w + guard;
+	BigInteger one = BigInteger.ONE.shiftLeft(wg);
+	BigInteger x = fixed(n, d, wg);
+	// atan(x) = 2 atan(x/(1 + sqrt(1 + x**2))), applied 4 times.
+	for (int i = 0; i < 4; ++i) {
+	    BigInteger s = isqrt(one.shiftLeft(wg).add(x.multiply(x)));
+	    x = x.shiftLeft(wg).divide(one.add(s));
+	}
+	BigInteger x2 = x.multiply(x).shiftRight(wg);
+	BigInteger power = x;
+	BigInteger sum = BigInteger.ZERO;
+	for (int j = 0; power.signum() != 0; ++j) {
+	    BigInteger t = power.divide(big(2*j + 1));
+	    sum = (j % 2 == 0)? sum.add(t) : sum.subtract(t);
+	    power = power.multiply(x2).shiftRight(wg);
+	}
+	return sum.shiftLeft(4).shiftRight(guard);
+    }
+
+    // { sin(n/d), cos(n/d) }.
+    static BigInteger[] sin_cos(BigInteger n, BigInteger d, int w) {
+	int wg = w + guard + Math.max(0, n.bitLength() - d.bitLength());
+	BigInteger x = fixed(n, d, wg);
+	BigInteger half_pi = pi(wg).shiftRight(1);
+	// k = floor(x/(PI/2) + 1/2)
+	BigInteger k = fixed(x.add(half_pi.shiftRight(1)), half_pi, 0);
+	BigInteger r = x.subtract(k.multiply(half_pi));
+	BigInteger sin = BigInteger.ZERO;
+	BigInteger cos = BigInteger.ZERO;
+	BigInteger term = BigInteger.ONE.shiftLeft(wg);	// r**j/j!
+	for (int j = 0; term.signum() != 0; ++j) {
+	    BigInteger signed = ((j/2) % 2 == 0)? term : term.negate();
+	    if (j % 2 == 0) cos = cos.add(signed); else sin = sin.add(signed);
+	    term = term.multiply(r).shiftRight(wg).divide(big(j + 1));
+	}
+	sin = sin.shiftRight(wg - w);
+	cos = cos.shiftRight(wg - w);
+	switch (k.intValue() & 3) {
+	    case 0: return new BigInteger[] { sin, cos };
+	    case 1: return new BigInteger[] { cos, sin.negate() };
+	    case 2: return new BigInteger[] { sin.negate(), cos.negate() };
+	    default: return new BigInteger[] { cos.negate(), sin };
+	}
+    }
+
+    // Assert that appr, x's approximation at precision p, is within
+    // 1 of the value given by ref.
+    static void assert_appr(String what, BigInteger appr, int p,
+			    fixed_value ref) {
+	int w = -p + 32;
+	BigInteger expected = ref.at(w);
+	BigInteger diff = appr.shiftLeft(32).subtract(expected).abs();
+	// The reference is off by a few units at w.
+	BigInteger allowed = BigInteger.ONE.shiftLeft(32).add(big(256));
+	assertTrue(what + " at " + p + ": got " + appr + ", expected "
+		   + expected + " / 2**32", diff.compareTo(allowed) < 0);
+    }
+
+    static void assert_appr(String what, CR x, int p, fixed_value ref) {
+	assert_appr(what, x.get_appr(p), p, ref);
+    }
+
+    // Check x at each of the given precisions, each time starting
+    // with a fresh node from make, so that no approximations are cached.
+    interface maker {
+	CR make();
+    }
+
+    static void assert_apprs(String what, maker make, int precisions[],
+			     fixed_value ref) {
+	for (int p : precisions) assert_appr(what, make.make(), p, ref);
+    }
+}
@@ -0,0 +1,129 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// The simplifications made when nodes are constructed:  the results
+// must have the structure described in CR.java, and the values of the
+// unsimplified expressions.
+public class SimplifyTest {
+    static final int precisions[] = { 10, 0, -1, -100, -1000 };
+
+    // sqrt(n), which no rule simplifies further.
+    static CR root(long n) {
+	return CR.valueOf(n).sqrt();
+    }
+
+    // Check both x and the same expression built without simplification,
+    // against n/d * sqrt(s) from the reference.
+    static void check(String what, CR x, CR unsimplified, long n, long d,
+		      long s) {
+	Reference.fixed_value ref = w -> Reference.sqrt(big(n * n * s),
+							big(d * d), w)
+					    .multiply(big(Long.signum(n)));
+	for (int p : precisions) {
+	    assert_appr(what, x, p, ref);
+	    assert_appr(what + " unsimplified", unsimplified, p, ref);
+	}
+    }
+
+    @Test
+    public void negations() {
+	CR x = root(2);
+	assertSame(x, x.negate().negate());
+	CR y = x;
+	for (int i = 0; i < 100001; ++i) y = y.negate();
+	assertTrue(y instanceof neg_CR);
+	assertSame(x, ((neg_CR)y).op);
+	check("-(-sqrt(2))", x.negate().negate(),
+	      new neg_CR(new neg_CR(x)), 1, 1, 2);
+	// Pushed into a constant factor, or cancelled by a negated one.
+	CR m = CR.valueOf(3).multiply(x).negate();
+	assertTrue(m instanceof mult_CR);
+	check("-(3 sqrt(2))", m, new neg_CR(new mult_CR(CR.valueOf(3), x)),
+	      -3, 1, 2);
+	CR n = x.multiply(root(3).negate()).negate();
+	assertTrue(n instanceof mult_CR);
+	assertFalse(((mult_CR)n).op2 instanceof neg_CR);
+	check("-(sqrt(2) (-sqrt(3)))", n,
+	      new neg_CR(new mult_CR(x, new neg_CR(root(3)))), 1, 1, 6);
+	// Otherwise kept.
+	assertTrue(x.multiply(root(3)).negate() instanceof neg_CR);
+    }
+
+    @Test
+    public void shifts() {
+	CR x = root(5);
+	assertSame(x, x.shiftLeft(0));
+	assertSame(x, x.shiftLeft(7).shiftRight(7));
+	CR y = x.shiftLeft(5).shiftRight(2).shiftLeft(-10);
+	assertTrue(y instanceof shifted_CR);
+	assertSame(x, ((shifted_CR)y).op);
+	assertEquals(-7, ((shifted_CR)y).count);
+	check("sqrt(5) * 2**-7", y,
+	      new shifted_CR(new shifted_CR(new shifted_CR(x, 5), -2), -10),
+	      1, 128, 5);
+	// The combined shift must be in range.
+	CR z = x.shiftLeft((1 << 28) - 1);
+	try {
+	    z.shiftLeft(1);
+	    fail("shift overflow not detected");
+	} catch (PrecisionOverflowError e) {
+	}
+	assertSame(x, z.shiftLeft(-(1 << 28) + 1));
+    }
+
+    @Test
+    public void constants() {
+	assertNotNull(CR.rational_value(CR.valueOf(2).add(CR.valueOf(3))));
+	CR c = CR.valueOf(7).subtract(CR.valueOf(2)).multiply(CR.valueOf(-3))
+		 .shiftLeft(3).divide(CR.valueOf(6)).negate();
+	BigInteger value[] = CR.rational_value(c);
+	assertNotNull(value);
+	assertEquals(big(20), value[0]);
+	assertEquals(big(1), value[1]);
+	// Long shifts are not folded, but their values are the same.
+	CR big_shift = CR.valueOf(3).shiftLeft(CR.max_folded_shift + 1);
+	assertTrue(big_shift instanceof shifted_CR);
+	assertEquals(big(3).shiftLeft(CR.max_folded_shift + 1 + 10),
+		     big_shift.get_appr(-10));
+	CR small = CR.valueOf(3).shiftRight(5);
+	assertNotNull(CR.rational_value(small));
+	assertEquals(big(3).shiftLeft(95), small.get_appr(-100));
+    }
+
+    @Test
+    public void identities() {
+	CR x = root(7);
+	CR zero = CR.valueOf(0);
+	CR one = CR.valueOf(1);
+	assertSame(x, x.add(zero));
+	assertSame(x, zero.add(x));
+	assertSame(x, x.subtract(zero));
+	assertSame(x, x.multiply(one));
+	assertSame(x, one.multiply(x));
+	assertSame(x, x.divide(one));
+	assertSame(x, CR.sum(x, zero));
+	assertSame(x, CR.product(one, x));
+	// Multiplication by 0 keeps x, whose evaluation may diverge.
+	assertNull(CR.rational_value(x.multiply(zero)));
+	check("sqrt(7) - 0", x.subtract(zero),
+	      new add_CR(x, new neg_CR(zero)), 1, 1, 7);
+	check("sqrt(7) / 1", x.divide(one), new mult_CR(x, new inv_CR(one)),
+	      1, 1, 7);
+    }
+}
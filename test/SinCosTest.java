@@ -0,0 +1,78 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.assert_apprs;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import org.junit.Test;
+
+// Sine and cosine:  reduction by multiples of PI/2, then halving
+// and a Taylor series below sin_cos_pair.bit_burst_min_bits, or the
+// bit-burst algorithm above it.
+public class SinCosTest {
+    static final int precisions[] = { 10, 0, -1, -100, -999, -1000, -5000,
+				      -20000 };
+
+    // n/d, as a node that construction cannot fold into a constant.
+    static CR arg(long n, long d) {
+	return CR.valueOf(n).multiply(CR.valueOf(d).sqrt().multiply(
+				CR.valueOf(d).sqrt()).inverse());
+    }
+
+    static void check(long n, long d) {
+	String x = n + "/" + d;
+	assert_apprs("sin(" + x + ")", () -> arg(n, d).sin(), precisions,
+		     w -> Reference.sin_cos(big(n), big(d), w)[0]);
+	assert_apprs("cos(" + x + ")", () -> arg(n, d).cos(), precisions,
+		     w -> Reference.sin_cos(big(n), big(d), w)[1]);
+    }
+
+    @Test
+    public void smallArguments() {
+	check(1, 3);
+	check(-1, 1000);
+	check(3, 4);
+    }
+
+    @Test
+    public void reducedArguments() {
+	check(7, 5);
+	check(-20, 1);
+	check(2001, 2);
+	check(-1000001, 1);
+	// Close to PI/2 and PI.
+	check(355, 226);
+	check(355, 113);
+    }
+
+    // Both functions from one sin_cos_pair, evaluated alternately at
+    // increasing and decreasing precisions.
+    @Test
+    public void sharedPair() {
+	CR sc[] = arg(-13, 7).sinCos();
+	int ps[] = { -10, -1200, -50, -3000, -3001, -200, -8000, 0 };
+	for (int p : ps) {
+	    assert_appr("sin(-13/7)", sc[0], p,
+			w -> Reference.sin_cos(big(-13), big(7), w)[0]);
+	    assert_appr("cos(-13/7)", sc[1], p,
+			w -> Reference.sin_cos(big(-13), big(7), w)[1]);
+	}
+    }
+
+    // sin(x)**2 + cos(x)**2 = 1, for an irrational argument.
+    @Test
+    public void pythagoras() {
+	CR sc[] = CR.valueOf(1000).sqrt().sinCos();
+	CR one = sc[0].multiply(sc[0]).add(sc[1].multiply(sc[1]));
+	for (int p : new int[] { -10, -1500, -6000 }) {
+	    BigInteger difference = one.get_appr(p).subtract(big(1).shiftLeft(-p));
+	    assertTrue("at " + p, difference.abs().compareTo(big(1)) <= 0);
+	}
+    }
+}
@@ -0,0 +1,114 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.assert_apprs;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+
+// Square roots, which sqrt_CR refines from the inverse square root
+// left over from its previous evaluation.
+public class SqrtTest {
+    static final int precisions[] = { 10, 0, -10, -40, -100, -600, -2000,
+				      -5000, -20000 };
+
+    @Test
+    public void refinedSqrt() {
+	CR root2 = CR.valueOf(2).sqrt();
+	CR root3_7 = CR.valueOf(3).divide(CR.valueOf(7)).sqrt();
+	for (int p : precisions) {
+	    assert_appr("sqrt(2)", root2, p,
+			w -> Reference.sqrt(big(2), big(1), w));
+	    assert_appr("sqrt(3/7)", root3_7, p,
+			w -> Reference.sqrt(big(3), big(7), w));
+	}
+    }
+
+    // Each precision evaluated by a fresh node, so that every
+    // evaluation starts from the double precision seed.
+    @Test
+    public void freshSqrt() {
+	assert_apprs("sqrt(2)", () -> CR.valueOf(2).sqrt(), precisions,
+		     w -> Reference.sqrt(big(2), big(1), w));
+    }
+
+    // Lower precisions after a higher one reuse an inverse square
+    // root that is more accurate than needed, and operand
+    // approximations that differ from the ones it was computed from.
+    @Test
+    public void decreasingPrecision() {
+	CR x = CR.valueOf(5).sqrt().add(CR.valueOf(1000)).sqrt();
+	int ps[] = { -3000, -50, -2900, -1000, -9000, -200, -100, -9001 };
+	for (int p : ps) {
+	    // sqrt(1000 + sqrt(5)) * 2**w, as
+	    // sqrt(1000 * 2**2w + sqrt(5 * 2**4w)), with guard bits.
+	    assert_appr("sqrt(1000 + sqrt(5))", x, p,
+			w -> {
+			    int wg = w + Reference.guard;
+			    BigInteger root5 =
+				Reference.isqrt(big(5).shiftLeft(4*wg));
+			    return Reference.isqrt(big(1000).shiftLeft(2*wg)
+							    .add(root5))
+					    .shiftRight(Reference.guard);
+			});
+	}
+    }
+
+    @Test
+    public void largeAndSmallOperands() {
+	CR large = CR.valueOf(3).shiftLeft(301).sqrt();
+	CR small = CR.valueOf(3).shiftRight(301).sqrt();
+	for (int p : precisions) {
+	    assert_appr("sqrt(3 * 2**301)", large, p,
+			w -> Reference.sqrt(big(6), big(1), w + 150));
+	    assert_appr("sqrt(3 * 2**-301)", small, p,
+			w -> Reference.sqrt(big(6), big(1), w).shiftRight(151));
+	}
+    }
+
+    // fixed_sqrt against the exact integer square root.
+    @Test
+    public void fixedSqrt() {
+	Random random = new Random(4);
+	for (int i = 0; i < 500; ++i) {
+	    int bits = 1 + random.nextInt(i < 250? 200 : 20000);
+	    BigInteger a = new BigInteger(bits, random).setBit(bits - 1);
+	    BigInteger r = sqrt_CR.fixed_sqrt(a);
+	    // Error < 1.5:  abs(2r - 2 sqrt(a)) < 3, bracketed by the
+	    // floor of the square root.
+	    BigInteger floor = Reference.isqrt(a);
+	    BigInteger diff = r.subtract(floor);
+	    assertTrue("sqrt(" + a + ") = " + r,
+		       diff.compareTo(big(-1)) >= 0 && diff.compareTo(big(2)) <= 0);
+	}
+    }
+
+    // newton_inv_sqrt, from a perturbed seed, against the exact
+    // inverse square root.
+    @Test
+    public void newtonInvSqrt() {
+	Random random = new Random(5);
+	for (int i = 0; i < 200; ++i) {
+	    int bits = 2 + random.nextInt(6000);
+	    BigInteger a = new BigInteger(bits, random).setBit(bits - 1);
+	    int y_k[] = new int[1];
+	    BigInteger y = sqrt_CR.inv_sqrt_seed(a, y_k);
+	    int target_bits = 50 + random.nextInt(3000);
+	    y = sqrt_CR.newton_inv_sqrt(a, y, y_k, sqrt_CR.fp_prec - 4,
+					target_bits);
+	    // y ~ 2**k/sqrt(a), so y*y*a ~ 2**2k, within a relative
+	    // error of 2**-(target_bits - 1).
+	    BigInteger exact = big(1).shiftLeft(2*y_k[0]);
+	    BigInteger error = y.multiply(y).multiply(a).subtract(exact).abs();
+	    assertTrue("a = " + a + ", target_bits = " + target_bits,
+		       error.shiftLeft(target_bits - 1).compareTo(exact) < 0);
+	}
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright (c) 1999, Silicon Graphics, Inc. -- ALL RIGHTS RESERVED
+//
+// See CR.java for the complete license terms, which apply to this file.
+
+package com.sgi.math;
+
+import static com.sgi.math.Reference.assert_appr;
+import static com.sgi.math.Reference.big;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// CR.sum, which builds a single sum_CR node.
+public class SumTest {
+    static final int precisions[] = { 10, 0, -1, -50, -300, -2000 };
+
+    // sqrt(1) + sqrt(2) + ... + sqrt(n)
+    @Test
+    public void squareRoots() {
+	int n = 1500;
+	CR terms[] = new CR[n];
+	for (int k = 1; k <= n; ++k) terms[k - 1] = CR.valueOf(k).sqrt();
+	CR sum = CR.sum(terms);
+	assertTrue(sum instanceof sum_CR);
+	for (int p : precisions) {
+	    assert_appr("sum of square roots", sum, p, w -> {
+		int wg = w + 16;
+		BigInteger total = big(0);
+		for (int k = 1; k <= n; ++k) {
+		    total = total.add(Reference.sqrt(big(k), big(1), wg));
+		}
+		return total.shiftRight(16);
+	    });
+	}
+    }
+
+    // 1 - 1/2 + 1/3 - ... - 1/n, an exact rational.
+    @Test
+    public void alternatingHarmonic() {
+	int n = 300;
+	List<CR> terms = new ArrayList<CR>();
+	BigInteger num = big(0);
+	BigInteger den = big(1);
+	for (int k = 1; k <= n; ++k) {
+	    CR term = CR.valueOf(1).divide(CR.valueOf(k).sqrt().multiply(
+					    CR.valueOf(k).sqrt()));
+	    terms.add(k % 2 == 0? term.negate() : term);
+	    BigInteger signed = big(k % 2 == 0? -1 : 1);
+	    num = num.multiply(big(k)).add(signed.multiply(den));
+	    den = den.multiply(big(k));
+	}
+	CR sum = CR.sum(terms);
+	BigInteger n_final = num;
+	BigInteger d_final = den;
+	for (int p : precisions) {
+	    assert_appr("alternating harmonic sum", sum, p,
+			w -> Reference.fixed(n_final, d_final, w));
+	}
+    }
+
+    // Terms of very different magnitudes:  sqrt(2) * 2**k, for
+    // k = -300 ... 300, sum to sqrt(2) (2**301 - 2**-300).
+    @Test
+    public void mixedMagnitudes() {
+	CR root2 = CR.valueOf(2).sqrt();
+	CR terms[] = new CR[601];
+	for (int k = -300; k <= 300; ++k) {
+	    terms[k + 300] = root2.shiftLeft(k);
+	}
+	CR sum = CR.sum(terms);
+	for (int p : precisions) {
+	    assert_appr("sum of powers of 2 times sqrt(2)", sum, p,
+			w -> Reference.sqrt(big(2), big(1), w + 600)
+				      .multiply(big(1).shiftLeft(601)
+						      .subtract(big(1)))
+				      .shiftRight(900));
+	}
+    }
+
+    // The sum agrees with adding one term at a time.
+    @Test
+    public void sameAsAdditions() {
+	CR terms[] = new CR[50];
+	CR chained = null;
+	for (int k = 0; k < terms.length; ++k) {
+	    terms[k] = CR.valueOf(k + 2).ln().multiply(CR.valueOf(k % 3 - 1));
+	    chained = (chained == null)? terms[k] : chained.add(terms[k]);
+	}
+	CR sum = CR.sum(terms);
+	for (int p : precisions) {
+	    BigInteger difference = sum.get_appr(p).subtract(chained.get_appr(p));
+	    assertTrue("at " + p, difference.abs().compareTo(big(1)) <= 0);
+	}
+    }
+
+    @Test
+    public void fewTerms() {
+	CR x = CR.valueOf(3).sqrt();
+	assertEquals(big(0), CR.sum().get_appr(-100));
+	assertTrue(CR.sum(x) == x);
+	assert_appr("sqrt(3) + sqrt(3)", CR.sum(x, x), -100,
+		    w -> Reference.sqrt(big(12), big(1), w));
+	assert_appr("3 sqrt(3)", CR.sum(x, x, x), -100,
+		    w -> Reference.sqrt(big(27), big(1), w));
+    }
+}